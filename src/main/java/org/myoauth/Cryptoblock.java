@@ -17,68 +17,151 @@ package org.myoauth;
 
 import java.math.BigInteger;
 import java.security.*;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Objects;
 
 import static java.nio.charset.StandardCharsets.*;
 
 /**
  * A collection of secure and cryptographic building blocks.
+ * <p>
+ * Random numbers come from a non-blocking generator, {@code NativePRNGNonBlocking} or {@code DRBG} where that is
+ * not available. The system property {@code org.myoauth.secureRandom} picks another one: {@code strong} for
+ * {@link SecureRandom#getInstanceStrong()}, which may block on {@code /dev/random}, or the name of an algorithm.
+ * <p>
+ * All threads share one generator. The native generators of one JVM read from one shared source anyway, so more
+ * instances of them would not spread the load, and more {@code DRBG} instances were slower in our benchmarks.
  */
 public class Cryptoblock {
-  
-    private static final Cryptoblock INSTANCE = new Cryptoblock();
+
+    /**
+     * The system property that selects the random number generator of {@link #getInstance()}
+     */
+    public static final String SECURE_RANDOM_PROPERTY = "org.myoauth.secureRandom";
+
+    private static final Cryptoblock INSTANCE = new Cryptoblock(System.getProperty(SECURE_RANDOM_PROPERTY, "nonblocking"));
 
     /**
      * The length of the code verifier
      */
     public static final int CODE_VERIFIER_LENGTH = 128;
 
-    private static char[] codeVerifierSymbols =
+    /* Maps the base64url alphabet to its 6-bit values, -1 for all other characters */
+    private static final byte[] BASE64_URL_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_URL_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private static final byte[] CODE_VERIFIER_SYMBOLS =
             "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~"
-            .toCharArray();
+            .getBytes(US_ASCII);
+
+    /* Random bytes from this limit on are rejected, so that each symbol is equally likely: 3 * 66 = 198 */
+    private static final int CODE_VERIFIER_LIMIT = 256 - 256 % CODE_VERIFIER_SYMBOLS.length;
+
+    /* Enough random bytes for one verifier with high probability, about 166 are needed on average */
+    private static final int CODE_VERIFIER_DRAW = 192;
 
     /* Instances are thread-safe */
     private final Base64.Encoder encoder;
     private final Base64.Decoder decoder;
     private final SecureRandom secureRandom;
-    private final S256 s256;
 
-    private Cryptoblock() {
+    /* Used by benchmarks */
+    Cryptoblock(String strategy) {
         try {
-            secureRandom = SecureRandom.getInstanceStrong();
+            this.secureRandom = secureRandom(strategy);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
         this.encoder = Base64.getUrlEncoder().withoutPadding();
         this.decoder = Base64.getUrlDecoder();
-        this.s256 = new S256();
+    }
+
+    private static SecureRandom secureRandom(String strategy) throws NoSuchAlgorithmException {
+        switch (strategy) {
+            case "strong":
+                return SecureRandom.getInstanceStrong();
+            case "nonblocking":
+                try {
+                    return SecureRandom.getInstance("NativePRNGNonBlocking");
+                } catch (NoSuchAlgorithmException e) {
+                    return SecureRandom.getInstance("DRBG");
+                }
+            default:
+                return SecureRandom.getInstance(strategy);
+        }
     }
 
     /**
      * Compares two strings for equality. This method prevents
-     * timing attacks. If both strings are of equal length the
-     * comparison takes the same amount to complete no matter if
-     * the strings are actually equal.
+     * timing attacks. The comparison takes the same amount of time
+     * for all strings of the length of {@code s1}, no matter where
+     * they differ from {@code s2}.
      *
      * @param s1 the first string to compare, can be null
      * @param s2 the second string to compare with, can be null
      * @return true if both strings are equal
      */
     public boolean areEqual(String s1, String s2) {
+        return areEqual((CharSequence) s1, s2);
+    }
+
+    /**
+     * Compares two character sequences char by char in constant time, without allocating. The time depends only
+     * on the length of {@code s1}, like {@link MessageDigest#isEqual(byte[], byte[])}, there is no early return
+     * if the lengths differ.
+     *
+     * @param s1 the first sequence to compare, for example the untrusted input, can be null
+     * @param s2 the second sequence to compare with, can be null
+     * @return true if both sequences are equal
+     */
+    public boolean areEqual(CharSequence s1, CharSequence s2) {
         if (s1 == null || s2 == null) {
             return false;
         }
-
-        byte[] a = s1.getBytes(UTF_8);
-        byte[] b = s2.getBytes(UTF_8);
-
-        if (a.length != b.length) {
-            return false;
+        int len1 = s1.length();
+        int len2 = s2.length();
+        if (len2 == 0) {
+            return len1 == 0;
+        }
+        int result = len1 ^ len2;
+        for (int i = 0; i < len1; i++) {
+            /* Reads s2 at index 0 once it is exhausted */
+            int j = ((i - len2) >>> 31) * i;
+            result |= s1.charAt(i) ^ s2.charAt(j);
         }
+        return result == 0;
+    }
 
-        int result = 0;
-        for (int i = 0; i < a.length; i++) {
-            result |= a[i] ^ b[i];
+    /**
+     * Compares two byte ranges in constant time, without allocating. The time depends only on {@code len1}.
+     *
+     * @param b1 the first array
+     * @param off1 the offset of the first range
+     * @param len1 the length of the first range
+     * @param b2 the second array
+     * @param off2 the offset of the second range
+     * @param len2 the length of the second range
+     * @return true if both ranges are equal
+     * @throws IndexOutOfBoundsException if a range is out of its array
+     */
+    public boolean areEqual(byte[] b1, int off1, int len1, byte[] b2, int off2, int len2) {
+        Objects.checkFromIndexSize(off1, len1, b1.length);
+        Objects.checkFromIndexSize(off2, len2, b2.length);
+        if (len2 == 0) {
+            return len1 == 0;
+        }
+        int result = len1 ^ len2;
+        for (int i = 0; i < len1; i++) {
+            int j = ((i - len2) >>> 31) * i;
+            result |= b1[off1 + i] ^ b2[off2 + j];
         }
         return result == 0;
     }
@@ -87,6 +170,10 @@ public class Cryptoblock {
         return !areEqual(s1, s2);
     }
 
+    public boolean areNotEqual(CharSequence s1, CharSequence s2) {
+        return !areEqual(s1, s2);
+    }
+
     /**
      * Creates a random string
      * <p>
@@ -104,10 +191,59 @@ public class Cryptoblock {
         return randomNumber.toString(16);
     }
 
+    /**
+     * Fills an array with random bytes, for example a session id or an initialization vector.
+     *
+     * @param bytes the array to fill
+     */
+    public void nextBytes(byte[] bytes) {
+        secureRandom.nextBytes(bytes);
+    }
+
     public byte[] base64UrlDecode(String src) {
         return decoder.decode(src);
     }
 
+    /**
+     * Decodes a range of base64url encoded bytes, for example one part of a JSON Web Token.
+     * Padding characters at the end of the range are accepted, but not required.
+     *
+     * @param src the source array
+     * @param off the offset of the encoded bytes
+     * @param len the number of encoded bytes
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the range is not valid base64url
+     */
+    public byte[] base64UrlDecode(byte[] src, int off, int len) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        int end = off + len;
+        while (end > off && src[end - 1] == '=') {
+            end--;
+        }
+        int n = end - off;
+        if (n % 4 == 1) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        }
+        byte[] dst = new byte[n / 4 * 3 + Math.max(0, n % 4 - 1)];
+        int bits = 0;
+        int buffer = 0;
+        int j = 0;
+        for (int i = off; i < end; i++) {
+            byte c = src[i];
+            int value = c < 0 ? -1 : BASE64_URL_VALUES[c];
+            if (value < 0) {
+                throw new IllegalArgumentException("Illegal base64url character " + Integer.toHexString(c & 0xff));
+            }
+            buffer = ((buffer << 6) | value) & 0xffff;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                dst[j++] = (byte) (buffer >> bits);
+            }
+        }
+        return dst;
+    }
+
     public String base64UrlEncode(byte[] src) {
         return encoder.encodeToString(src);
     }
@@ -121,12 +257,19 @@ public class Cryptoblock {
      * @return a code verifier string, never null
      */
     public String codeVerifier() {
-        StringBuilder sb = new StringBuilder(CODE_VERIFIER_LENGTH);
-        for (int i = 0; i < CODE_VERIFIER_LENGTH; i++) {
-            int rnd = secureRandom.nextInt(codeVerifierSymbols.length);
-            sb.append(codeVerifierSymbols[rnd]);
+        byte[] verifier = new byte[CODE_VERIFIER_LENGTH];
+        byte[] random = new byte[CODE_VERIFIER_DRAW];
+        int n = 0;
+        while (n < verifier.length) {
+            secureRandom.nextBytes(random);
+            for (int i = 0; i < random.length && n < verifier.length; i++) {
+                int b = random[i] & 0xff;
+                if (b < CODE_VERIFIER_LIMIT) {
+                    verifier[n++] = CODE_VERIFIER_SYMBOLS[b % CODE_VERIFIER_SYMBOLS.length];
+                }
+            }
         }
-        return sb.toString();
+        return new String(verifier, US_ASCII);
     }
 
     /**
@@ -136,24 +279,10 @@ public class Cryptoblock {
      */
     public String codeChallenge(String codeVerifier) {
         byte[] octets = codeVerifier.getBytes(US_ASCII);
-        byte[] hash = s256.hash(octets);
+        byte[] hash = Digests.sha256(octets);
         return base64UrlEncode(hash);
     }
 
-    class S256 {
-
-        public byte[] hash(byte[] bytes) {
-            try {
-                MessageDigest md = MessageDigest.getInstance("SHA-256");
-                md.update(bytes);
-                return md.digest();
-            } catch (NoSuchAlgorithmException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-    }
-
     /**
      * Returns an instance of this class.
      *
@@ -163,4 +292,18 @@ public class Cryptoblock {
         return INSTANCE;
     }
 
+    /**
+     * Returns an instance that draws its random numbers from {@link SecureRandom#getInstanceStrong()}.
+     * It is created on first use.
+     *
+     * @return instance of class
+     */
+    public static Cryptoblock getStrongInstance() {
+        return Strong.INSTANCE;
+    }
+
+    private static class Strong {
+        static final Cryptoblock INSTANCE = new Cryptoblock("strong");
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * SHA-256 without looking up a provider for each hash.
+ * <p>
+ * Digests are reused from a small pool. If the pool is empty, a digest is cloned from a prototype, and returned to
+ * the pool afterwards unless it is full. Unlike a {@code ThreadLocal}, the number of digests is bounded by the number
+ * of concurrent callers, which also works for many short-lived or virtual threads.
+ */
+public final class Digests {
+
+    private static final MessageDigest SHA_256_PROTOTYPE;
+
+    private static final BlockingQueue<MessageDigest> SHA_256 =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+
+    static {
+        try {
+            SHA_256_PROTOTYPE = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Digests() {
+    }
+
+    /**
+     * Returns the SHA-256 hash of some bytes.
+     *
+     * @param input the bytes to hash
+     * @return the 32 bytes of the hash
+     */
+    public static byte[] sha256(byte[] input) {
+        return sha256(input, 0, input.length);
+    }
+
+    /**
+     * Returns the SHA-256 hash of a range of bytes.
+     *
+     * @param input the source array
+     * @param off the offset of the bytes to hash
+     * @param len the number of bytes to hash
+     * @return the 32 bytes of the hash
+     */
+    public static byte[] sha256(byte[] input, int off, int len) {
+        MessageDigest md = acquire();
+        try {
+            md.update(input, off, len);
+            return md.digest();
+        } finally {
+            md.reset();
+            SHA_256.offer(md);
+        }
+    }
+
+    private static MessageDigest acquire() {
+        MessageDigest md = SHA_256.poll();
+        if (md != null) {
+            return md;
+        }
+        try {
+            return (MessageDigest) SHA_256_PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+    }
+
+}
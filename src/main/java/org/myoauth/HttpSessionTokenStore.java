@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import static org.myoauth.MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME;
+
+/**
+ * Keeps the tokens in the http session, the default. Saving creates a http session if the request has none.
+ * <p>
+ * The tokens are a single {@link TokenRecord} attribute. Sessions saved by earlier versions, with an attribute
+ * per token, are still read.
+ */
+public final class HttpSessionTokenStore implements TokenStore {
+
+    @Override
+    public TokenRecord load(HttpServletRequest request, HttpSession session) {
+        if (session == null) {
+            return null;
+        }
+        TokenRecord record = (TokenRecord) session.getAttribute(TOKEN_RECORD_ATTRIBUTE_NAME);
+        return record != null ? record : legacy(session);
+    }
+
+    /* The attributes written by earlier versions */
+    private static TokenRecord legacy(HttpSession session) {
+        String accessToken = (String) session.getAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME);
+        if (accessToken == null) {
+            return null;
+        }
+        Instant expiration = (Instant) session.getAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME);
+        return new TokenRecord(accessToken, (String) session.getAttribute(IDENTITY_TOKEN_ATTRIBUTE_NAME),
+                expiration != null ? expiration : Instant.EPOCH, (Instant) session.getAttribute(ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME));
+    }
+
+    @Override
+    public void save(HttpServletRequest request, HttpServletResponse response, HttpSession session, TokenRecord record) {
+        save(session != null ? session : request.getSession(), record);
+    }
+
+    @Override
+    public void remove(HttpServletRequest request, HttpServletResponse response, HttpSession session) {
+        if (session != null) {
+            session.removeAttribute(TOKEN_RECORD_ATTRIBUTE_NAME);
+            session.removeAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME);
+            session.removeAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME);
+            session.removeAttribute(ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME);
+            session.removeAttribute(IDENTITY_TOKEN_ATTRIBUTE_NAME);
+        }
+    }
+
+    /* Does nothing once the session has been invalidated */
+    @Override
+    public Consumer<TokenRecord> saveLater(HttpServletRequest request, HttpSession session) {
+        if (session == null) {
+            return null;
+        }
+        return record -> {
+            try {
+                save(session, record);
+            } catch (IllegalStateException e) {
+                /* invalidated in the meantime */
+            }
+        };
+    }
+
+    private static void save(HttpSession session, TokenRecord record) {
+        session.setAttribute(TOKEN_RECORD_ATTRIBUTE_NAME, record);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.util.function.Consumer;
+
+/**
+ * A store that keeps the tokens on the server, outside of the http session. The records are keyed by a random
+ * session id in a cookie, so the tokens do not take part in session replication.
+ */
+public abstract class KeyedTokenStore implements TokenStore {
+
+    static final String COOKIE_NAME = "__Host-myoauth_session_id";
+
+    /* 128 random bits, base64url encoded */
+    static final int KEY_LENGTH = 22;
+
+    private final Cryptoblock cryptoblock = Cryptoblock.getInstance();
+
+    /**
+     * Loads a token record.
+     *
+     * @param key the session id
+     * @return the token record, or null
+     */
+    protected abstract TokenRecord load(String key);
+
+    /**
+     * Saves a token record.
+     *
+     * @param key the session id
+     * @param record the token record
+     */
+    protected abstract void save(String key, TokenRecord record);
+
+    /**
+     * Removes a token record.
+     *
+     * @param key the session id
+     */
+    protected abstract void remove(String key);
+
+    @Override
+    public TokenRecord load(HttpServletRequest request, HttpSession session) {
+        String key = key(request);
+        return key != null ? load(key) : null;
+    }
+
+    /* Issues a new session id if the request has none */
+    @Override
+    public void save(HttpServletRequest request, HttpServletResponse response, HttpSession session, TokenRecord record) {
+        String key = key(request);
+        if (key == null) {
+            byte[] bytes = new byte[16];
+            cryptoblock.nextBytes(bytes);
+            key = cryptoblock.base64UrlEncode(bytes);
+            response.addCookie(cookie(key, -1));
+        }
+        save(key, record);
+    }
+
+    @Override
+    public void remove(HttpServletRequest request, HttpServletResponse response, HttpSession session) {
+        String key = key(request);
+        if (key != null) {
+            remove(key);
+            response.addCookie(cookie("", 0));
+        }
+    }
+
+    @Override
+    public Consumer<TokenRecord> saveLater(HttpServletRequest request, HttpSession session) {
+        String key = key(request);
+        return key != null ? record -> save(key, record) : null;
+    }
+
+    /* The session id of the request, or null if there is none or it was not issued by this class */
+    private static String key(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (cookie.getName().equals(COOKIE_NAME)) {
+                String value = cookie.getValue();
+                return value != null && value.length() == KEY_LENGTH ? value : null;
+            }
+        }
+        return null;
+    }
+
+    private static Cookie cookie(String value, int maxAge) {
+        Cookie cookie = new Cookie(COOKIE_NAME, value);
+        cookie.setPath("/");
+        cookie.setMaxAge(maxAge);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(true);
+        return cookie;
+    }
+}
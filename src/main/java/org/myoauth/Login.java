@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.myoauth.cognito.CognitoService;
+
+import java.net.URI;
+
+import static org.myoauth.MyOAuthFilter.CODE_VERIFIER_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.STATE_ATTRIBUTE_NAME;
+
+/**
+ * Begins the login of a user. The state and code verifier of the authorization request are saved for the login
+ * callback, and the user is redirected to the returned URI.
+ * <p>
+ * With {@code sessionStore} {@code cookie} they are kept in a short-lived encrypted cookie, otherwise in the http
+ * session. The filter publishes an instance as servlet context attribute {@code org.myoauth.login}.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+public final class Login {
+
+    private final CognitoService cognito;
+    private final Cryptoblock cryptoblock;
+    /* null, if not configured */
+    private final PkcePool pkcePool;
+    /* null, unless the tokens are kept in a session cookie */
+    private final SessionCookie sessionCookie;
+
+    Login(CognitoService cognito, Cryptoblock cryptoblock, PkcePool pkcePool, SessionCookie sessionCookie) {
+        this.cognito = cognito;
+        this.cryptoblock = cryptoblock;
+        this.pkcePool = pkcePool;
+        this.sessionCookie = sessionCookie;
+    }
+
+    /**
+     * Begins a login with the default redirection URI.
+     *
+     * @param request the http request
+     * @param response the http response, may receive a cookie
+     * @return the URI of the authorization endpoint to redirect the user to
+     */
+    public URI begin(HttpServletRequest request, HttpServletResponse response) {
+        return begin(request, response, null);
+    }
+
+    /**
+     * Begins a login with one of several redirection URIs.
+     *
+     * @param request the http request
+     * @param response the http response, may receive a cookie
+     * @param redirectURI one of the configured redirection URIs, or null for the default
+     * @return the URI of the authorization endpoint to redirect the user to
+     */
+    public URI begin(HttpServletRequest request, HttpServletResponse response, String redirectURI) {
+        Pkce pkce = pkcePool != null ? pkcePool.take() : Pkce.create(cryptoblock);
+        if (sessionCookie != null) {
+            sessionCookie.saveLogin(response, pkce);
+        } else {
+            HttpSession httpSession = request.getSession();
+            httpSession.setAttribute(STATE_ATTRIBUTE_NAME, pkce.getState());
+            httpSession.setAttribute(CODE_VERIFIER_ATTRIBUTE_NAME, pkce.getCodeVerifier());
+        }
+        return redirectURI != null
+                ? cognito.authorizationRequest(pkce.getState(), pkce.getCodeChallenge(), redirectURI)
+                : cognito.authorizationRequest(pkce.getState(), pkce.getCodeChallenge());
+    }
+}
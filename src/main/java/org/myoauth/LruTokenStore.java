@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the tokens of a bounded number of users in memory. When the store is full, the least recently used
+ * record is dropped and its user goes through the refresh token grant on the next request.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+public final class LruTokenStore extends KeyedTokenStore {
+
+    private final int maximumSize;
+    private final LinkedHashMap<String, TokenRecord> records;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param maximumSize the maximum number of records
+     */
+    public LruTokenStore(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize");
+        }
+        this.maximumSize = maximumSize;
+        this.records = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenRecord> eldest) {
+                return size() > LruTokenStore.this.maximumSize;
+            }
+        };
+    }
+
+    @Override
+    protected synchronized TokenRecord load(String key) {
+        return records.get(key);
+    }
+
+    @Override
+    protected synchronized void save(String key, TokenRecord record) {
+        records.put(key, record);
+    }
+
+    @Override
+    protected synchronized void remove(String key) {
+        records.remove(key);
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+}
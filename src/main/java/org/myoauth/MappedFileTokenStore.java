@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the tokens in a memory-mapped file that several JVMs on one host can share, for example behind a load
+ * balancer without sticky sessions.
+ * <p>
+ * The file is a hash table of fixed-size slots, {@code magic | version | capacity | slot size} followed by the
+ * slots. A slot is {@code state | session id | expiration | renewal | access token | identity token}. A record
+ * lives in one of {@value #PROBES} consecutive slots after the hash of its session id. When they are all taken,
+ * the record that expires first is overwritten. Tokens that do not fit into a slot are not stored, the user
+ * then goes through the refresh token grant again.
+ * <p>
+ * The slots are locked in stripes of {@value #PROBES}, a record touches one or two of them. Threads of one JVM
+ * take a read-write lock per stripe, so readers do not wait for each other, and hold one file lock per stripe
+ * against other JVMs: shared while there are readers, exclusive for a writer. File locks belong to the whole JVM,
+ * so all instances of one file in a JVM, for example while an old and a new deployment overlap, share the
+ * stripes.
+ * <p>
+ * The file holds tokens of all users. It is created readable and writable by its owner only, an existing file
+ * that others can read is refused, one that its group can read is used with a warning.
+ */
+public final class MappedFileTokenStore extends KeyedTokenStore implements Closeable {
+
+    private final Logger logger = Logger.getLogger(getClass().getPackageName());
+
+    static final int SLOT_SIZE = 8192;
+    static final int PROBES = 16;
+
+    private static final int MAGIC = 0x4d594f41;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int USED = 1;
+    private static final long NO_RENEWAL = Long.MIN_VALUE;
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    /* Offsets within a slot */
+    private static final int STATE = 0;
+    private static final int KEY = 4;
+    private static final int EXPIRATION = KEY + KEY_LENGTH + 2;
+    private static final int RENEWAL = EXPIRATION + 8;
+    private static final int TOKENS = RENEWAL + 8;
+
+    /* The stripes of all instances of one file in this JVM */
+    private static final ConcurrentMap<Path, ConcurrentMap<Integer, Stripe>> STRIPES = new ConcurrentHashMap<>();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ConcurrentMap<Integer, Stripe> stripes;
+    private final int capacity;
+    private final int probes;
+
+    /**
+     * Opens a store, or creates it if the file does not exist.
+     *
+     * @param file the path of the file
+     * @param capacity the number of slots
+     * @throws IOException if the file cannot be mapped, or was created with another capacity
+     */
+    public MappedFileTokenStore(Path file, int capacity) throws IOException {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE) {
+            throw new IllegalArgumentException("capacity");
+        }
+        this.capacity = capacity;
+        this.probes = Math.min(PROBES, capacity);
+        this.channel = open(file);
+        this.stripes = STRIPES.computeIfAbsent(file.toRealPath(), path -> new ConcurrentHashMap<>());
+        try {
+            synchronized (stripes) {
+                FileLock lock = channel.lock(0, HEADER_SIZE, false);
+                try {
+                    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+                    if (buffer.getInt(0) == 0) {
+                        buffer.putInt(4, VERSION).putInt(8, capacity).putInt(12, SLOT_SIZE).putInt(0, MAGIC);
+                    } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity || buffer.getInt(12) != SLOT_SIZE) {
+                        throw new IOException(file + " is not a token store of capacity " + capacity);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /* Creates the file for its owner only, and checks the permissions of an existing one */
+    private FileChannel open(Path file) throws IOException {
+        if (!file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return FileChannel.open(file, CREATE, READ, WRITE);
+        }
+        try {
+            return FileChannel.open(file, Set.of(CREATE_NEW, READ, WRITE), PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (FileAlreadyExistsException e) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+            if (permissions.contains(PosixFilePermission.OTHERS_READ) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException(file + " is accessible by other users, restrict it to its owner (chmod 600)");
+            }
+            if (permissions.contains(PosixFilePermission.GROUP_READ)) {
+                logger.warning(() -> file + " is readable by its group, the tokens of all users are exposed to it");
+            }
+            return FileChannel.open(file, READ, WRITE);
+        }
+    }
+
+    @Override
+    protected TokenRecord load(String key) {
+        int first = first(key);
+        Stripe[] locked = lock(first, true);
+        try {
+            int slot = find(first, key);
+            return slot >= 0 ? read(offset(slot)) : null;
+        } finally {
+            unlock(locked, true);
+        }
+    }
+
+    @Override
+    protected void save(String key, TokenRecord record) {
+        byte[] accessToken = record.getAccessToken().getBytes(US_ASCII);
+        byte[] identityToken = record.getIdentityToken() != null ? record.getIdentityToken().getBytes(US_ASCII) : null;
+        if (TOKENS + 8 + accessToken.length + (identityToken != null ? identityToken.length : 0) > SLOT_SIZE) {
+            logger.warning("tokens exceed the slot size of the token store, not stored");
+            return;
+        }
+        int first = first(key);
+        Stripe[] locked = lock(first, false);
+        try {
+            int slot = find(first, key);
+            if (slot < 0) {
+                slot = victim(first);
+            }
+            write(offset(slot), key, record, accessToken, identityToken);
+        } finally {
+            unlock(locked, false);
+        }
+    }
+
+    @Override
+    protected void remove(String key) {
+        int first = first(key);
+        Stripe[] locked = lock(first, false);
+        try {
+            int slot = find(first, key);
+            if (slot >= 0) {
+                buffer.putInt(offset(slot) + STATE, 0);
+            }
+        } finally {
+            unlock(locked, false);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* The first of the consecutive slots a key may live in */
+    private int first(String key) {
+        return Math.floorMod(key.hashCode() * 0x9e3779b9, capacity - probes + 1);
+    }
+
+    /* Locks the stripes of the slots a key may live in, in ascending order */
+    private Stripe[] lock(int first, boolean shared) {
+        int from = first / PROBES;
+        int to = (first + probes - 1) / PROBES;
+        Stripe[] locked = new Stripe[to - from + 1];
+        for (int i = 0; i < locked.length; i++) {
+            Stripe stripe = stripes.computeIfAbsent(from + i, Stripe::new);
+            try {
+                if (shared) {
+                    stripe.lockShared(channel);
+                } else {
+                    stripe.lockExclusive(channel);
+                }
+            } catch (RuntimeException e) {
+                unlock(Arrays.copyOf(locked, i), shared);
+                throw e;
+            }
+            locked[i] = stripe;
+        }
+        return locked;
+    }
+
+    private static void unlock(Stripe[] locked, boolean shared) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            if (shared) {
+                locked[i].unlockShared();
+            } else {
+                locked[i].unlockExclusive();
+            }
+        }
+    }
+
+    /* The slot of a key, or -1 */
+    private int find(int first, String key) {
+        for (int slot = first; slot < first + probes; slot++) {
+            int offset = offset(slot);
+            if (buffer.getInt(offset + STATE) == USED && matches(offset + KEY, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /* A free slot, otherwise the one whose record expires first */
+    private int victim(int first) {
+        int victim = first;
+        long expiration = Long.MAX_VALUE;
+        for (int slot = first; slot < first + probes; slot++) {
+            int offset = offset(slot);
+            if (buffer.getInt(offset + STATE) != USED) {
+                return slot;
+            }
+            if (buffer.getLong(offset + EXPIRATION) < expiration) {
+                expiration = buffer.getLong(offset + EXPIRATION);
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private boolean matches(int offset, String key) {
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if (buffer.get(offset + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* The record of a slot, or null if the token lengths in the file run past the slot */
+    private TokenRecord read(int offset) {
+        Instant expiration = Instant.ofEpochSecond(buffer.getLong(offset + EXPIRATION));
+        long renewal = buffer.getLong(offset + RENEWAL);
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(offset + TOKENS).limit(offset + SLOT_SIZE);
+        int length = slot.getInt();
+        if (length < 0 || length > slot.remaining() - 4) {
+            return corrupt(offset);
+        }
+        String accessToken = string(slot, length);
+        length = slot.getInt();
+        if (length < -1 || length > slot.remaining()) {
+            return corrupt(offset);
+        }
+        String identityToken = length >= 0 ? string(slot, length) : null;
+        return new TokenRecord(accessToken, identityToken, expiration, renewal != NO_RENEWAL ? Instant.ofEpochSecond(renewal) : null);
+    }
+
+    private TokenRecord corrupt(int offset) {
+        logger.warning(() -> "slot at " + offset + " of the token store is corrupt, ignored");
+        return null;
+    }
+
+    private void write(int offset, String key, TokenRecord record, byte[] accessToken, byte[] identityToken) {
+        ByteBuffer slot = buffer.duplicate();
+        slot.position(offset + KEY);
+        slot.put(key.getBytes(US_ASCII));
+        slot.putLong(offset + EXPIRATION, record.getExpiration().getEpochSecond());
+        slot.putLong(offset + RENEWAL, record.getRenewal() != null ? record.getRenewal().getEpochSecond() : NO_RENEWAL);
+        slot.position(offset + TOKENS);
+        slot.putInt(accessToken.length).put(accessToken);
+        if (identityToken != null) {
+            slot.putInt(identityToken.length).put(identityToken);
+        } else {
+            slot.putInt(-1);
+        }
+        slot.putInt(offset + STATE, USED);
+    }
+
+    private static String string(ByteBuffer slot, int length) {
+        byte[] bytes = new byte[length];
+        slot.get(bytes);
+        return new String(bytes, US_ASCII);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /* Consecutive slots, the readers of this JVM share one file lock on them */
+    private static final class Stripe {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long position;
+        private int readers;
+        private FileLock fileLock;
+
+        Stripe(int index) {
+            this.position = offset(index * PROBES);
+        }
+
+        void lockShared(FileChannel channel) {
+            lock.readLock().lock();
+            try {
+                synchronized (this) {
+                    if (readers == 0) {
+                        fileLock = acquire(channel, true);
+                    }
+                    readers++;
+                }
+            } catch (RuntimeException e) {
+                lock.readLock().unlock();
+                throw e;
+            }
+        }
+
+        void unlockShared() {
+            try {
+                synchronized (this) {
+                    if (--readers == 0) {
+                        release();
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void lockExclusive(FileChannel channel) {
+            lock.writeLock().lock();
+            try {
+                fileLock = acquire(channel, false);
+            } catch (RuntimeException e) {
+                lock.writeLock().unlock();
+                throw e;
+            }
+        }
+
+        void unlockExclusive() {
+            try {
+                release();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private FileLock acquire(FileChannel channel, boolean shared) {
+            try {
+                return channel.lock(position, (long) PROBES * SLOT_SIZE, shared);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /* The lock is gone with the channel of an instance that was closed in the meantime */
+        private void release() {
+            FileLock released = fileLock;
+            fileLock = null;
+            try {
+                if (released.isValid()) {
+                    released.release();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
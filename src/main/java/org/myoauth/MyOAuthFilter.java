@@ -23,11 +23,16 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import org.myoauth.cognito.*;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,8 +42,11 @@ import java.util.logging.Logger;
  * This filter is capable of handling the OAuth 2.0 backchannel in the Authorization Code Flow. It can exchange
  * an authorization code for an access token.
  * <p>
- * The MyOAuthFilter stores the access and identity token in the http session. The refresh token is stored
- * as a secure cookie.
+ * As resource server, the filter verifies the bearer token in the {@code Authorization} header instead, see
+ * {@link #tryBearerToken(HttpServletRequest, HttpServletResponse, FilterChain)}.
+ * <p>
+ * The MyOAuthFilter stores the access and identity token in a {@link TokenStore}, the http session by default.
+ * The refresh token is stored as a secure cookie.
  */
 public class MyOAuthFilter implements Filter {
 
@@ -46,13 +54,31 @@ public class MyOAuthFilter implements Filter {
 
     /* These keys are used in the servlet context */
     public static final String OAUTH_SERVICE_ATTRIBUTE_NAME  = "org.myoauth.provider";
+    public static final String PKCE_POOL_ATTRIBUTE_NAME      = "org.myoauth.pkce_pool";
+    public static final String LOGIN_ATTRIBUTE_NAME          = "org.myoauth.login";
+
+    /* This key is used in a request that is dispatched again after an asynchronous refresh */
+    public static final String RESUMED_ATTRIBUTE_NAME = "org.myoauth.resumed";
+
+    /*
+     * These keys are used in the http session, the token record holds the access and identity token. The record
+     * is a request attribute too.
+     */
+    public static final String TOKEN_RECORD_ATTRIBUTE_NAME            = "org.myoauth.token_record";
+    public static final String STATE_ATTRIBUTE_NAME                   = "org.myoauth.state";
+    public static final String CODE_VERIFIER_ATTRIBUTE_NAME           = "org.myoauth.code_verifier";
 
-    /* These keys are used in the http session */
+    /*
+     * These keys are used in the request. Http sessions of earlier versions hold the tokens under these keys, the
+     * application still finds them there, see TokenRecordRequest.
+     */
     public static final String ACCESS_TOKEN_ATTRIBUTE_NAME            = "org.myoauth.access_token";
     public static final String ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME = "org.myoauth.access_token.expiration";
+    public static final String ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME    = "org.myoauth.access_token.renewal";
     public static final String IDENTITY_TOKEN_ATTRIBUTE_NAME          = "org.myoauth.identity_token";
-    public static final String STATE_ATTRIBUTE_NAME                   = "org.myoauth.state";
-    public static final String CODE_VERIFIER_ATTRIBUTE_NAME           = "org.myoauth.code_verifier";
+
+    /* This key is used in the request, it holds the VerifiedJwt of a bearer token */
+    public static final String CLAIMS_ATTRIBUTE_NAME = "org.myoauth.claims";
 
     /* Configuration of the refresh token cookie */
     public static final String REFRESH_TOKEN_COOKIE_NAME        = "__Host-myoauth_refresh_token";
@@ -62,26 +88,116 @@ public class MyOAuthFilter implements Filter {
     private CognitoConfig config;
     private CognitoService cognito;
     private Cryptoblock cryptoblock;
-    private List<JWK> webKeySet;
+    private JwkSetManager webKeySet;
+
+    private RedirectionURIs redirectionURIs;
+
+    /* null, if not configured */
+    private PathPatterns includePaths;
+    private PathPatterns excludePaths;
+
+    private TokenStore tokenStore;
+
+    private PkcePool pkcePool;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         logger.info("Using MyOAuthFilter version 0.9 with Amazon Cognito.");
-        config = CognitoConfig.from(filterConfig);
+        CognitoConfig config = CognitoConfig.from(filterConfig);
+        CognitoService cognito = new CognitoService(config);
+        init(config, cognito, initWebKeySet(config, cognito), filterConfig.getServletContext());
+    }
+
+    /* Everything but building the dependencies, tests pass in their own */
+    void init(CognitoConfig config, CognitoService cognito, JwkSetManager webKeySet, ServletContext servletContext) throws ServletException {
         logger.info(MessageFormat.format("userPoolId={0}", config.getUserPoolId()));
         logger.info(MessageFormat.format("region={0}", config.getRegion()));
         logger.info(MessageFormat.format("clientId={0}", config.getClientId()));
-        cognito = new CognitoService(config);
-        cryptoblock = Cryptoblock.getInstance();
-        try {
-            this.webKeySet = cognito.jwks();
-            for (JWK jwk : webKeySet) {
-                logger.info("kid=" + jwk.getKid());
+        this.config = config;
+        this.cognito = cognito;
+        this.webKeySet = webKeySet;
+        this.cryptoblock = Cryptoblock.getInstance();
+        this.redirectionURIs = RedirectionURIs.of(config.getRedirectURIs());
+        this.includePaths = config.getIncludePaths().isEmpty() ? null : PathPatterns.compile(config.getIncludePaths());
+        this.excludePaths = config.getExcludePaths().isEmpty() ? null : PathPatterns.compile(config.getExcludePaths());
+        this.tokenStore = initTokenStore(config);
+        logger.info(MessageFormat.format("sessionStore={0}", config.getSessionStore()));
+        servletContext.setAttribute(OAUTH_SERVICE_ATTRIBUTE_NAME, cognito);
+        if (config.getPkcePoolSize() > 0) {
+            pkcePool = new PkcePool(cryptoblock, config.getPkcePoolSize());
+            pkcePool.start();
+            logger.info(MessageFormat.format("pkcePoolSize={0}", config.getPkcePoolSize()));
+            servletContext.setAttribute(PKCE_POOL_ATTRIBUTE_NAME, pkcePool);
+        }
+        servletContext.setAttribute(LOGIN_ATTRIBUTE_NAME, new Login(cognito, cryptoblock, pkcePool, sessionCookie()));
+    }
+
+    /* The token store, if it keeps the tokens in a session cookie, which then also holds the login state */
+    private SessionCookie sessionCookie() {
+        return tokenStore instanceof SessionCookie ? (SessionCookie) tokenStore : null;
+    }
+
+    private static TokenStore initTokenStore(CognitoConfig config) throws ServletException {
+        switch (config.getSessionStore()) {
+            case "cookie":
+                return new SessionCookie(config.getSessionCookieKeys());
+            case "memory":
+                return new LruTokenStore(config.getSessionStoreSize());
+            case "file":
+                try {
+                    return new MappedFileTokenStore(config.getSessionStoreFile(), config.getSessionStoreSize());
+                } catch (IOException e) {
+                    throw new ServletException("unable to open session store " + config.getSessionStoreFile(), e);
+                }
+            default:
+                return new HttpSessionTokenStore();
+        }
+    }
+
+    /**
+     * Creates the key set manager. A snapshot from a previous run or the lazy bootstrap let the filter start
+     * without contacting Amazon Cognito, the keys are then loaded in the background.
+     */
+    private JwkSetManager initWebKeySet(CognitoConfig config, CognitoService cognito) throws ServletException {
+        Path snapshot = config.getJwksSnapshot();
+        JwkSet jwks = null;
+        boolean stale = true;
+        if (snapshot != null && Files.isReadable(snapshot)) {
+            try {
+                jwks = JwkSetSnapshot.read(snapshot);
+                logger.info(MessageFormat.format("JSON Web Key Set loaded from snapshot {0}", snapshot));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "unable to read JSON Web Key Set snapshot " + snapshot, e);
             }
-        } catch (IOException e) {
-            throw new ServletException("unable to load web keys", e);
         }
-        filterConfig.getServletContext().setAttribute(OAUTH_SERVICE_ATTRIBUTE_NAME, cognito);
+        if (jwks == null && config.isLazyJwksBootstrap()) {
+            logger.info("JSON Web Key Set is loaded in the background");
+            jwks = JwkSet.empty();
+        }
+        if (jwks == null) {
+            try {
+                jwks = cognito.jwkSet();
+                stale = false;
+            } catch (IOException e) {
+                throw new ServletException("unable to load web keys", e);
+            }
+        }
+        for (JWK jwk : jwks) {
+            logger.info("kid=" + jwk.getKid());
+        }
+
+        JwkSetManager manager = new JwkSetManager(cognito, jwks, config.getJwksRefreshInterval(), config.getJwksMinimumRefreshInterval(), snapshot);
+        manager.start();
+        if (stale) {
+            manager.refresh();
+        } else if (snapshot != null) {
+            try {
+                JwkSetSnapshot.write(snapshot, jwks);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "unable to write JSON Web Key Set snapshot " + snapshot, e);
+            }
+        }
+        return manager;
     }
 
     @Override
@@ -90,28 +206,99 @@ public class MyOAuthFilter implements Filter {
     }
 
     public void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
-        if (isRedirectionURI(request)) {
-            tryAuthorizationCodeExchange(request, response, filterChain);
-        } else if (hasAccessToken(request) && !isAccessTokenExpired(request)) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC && request.getAttribute(RESUMED_ATTRIBUTE_NAME) != null) {
             passthrough(request, response, filterChain);
-        } else if (hasRefreshToken(request)) {
-            tryRefreshTokenGrant(request, response, filterChain);
+            return;
+        }
+        if (config.isBearerAuthentication()) {
+            if (isFilteredPath(request)) {
+                tryBearerToken(request, response, filterChain);
+            } else {
+                passthrough(request, response, filterChain);
+            }
+            return;
+        }
+        if (!isFilteredPath(request) && !isRedirectionURI(request)) {
+            passthrough(request, response, filterChain);
+            return;
+        }
+
+        RequestState state = RequestState.of(request, redirectionURIs.match(request), tokenStore);
+        Instant now = Instant.now();
+        if (state.isRedirection()) {
+            tryAuthorizationCodeExchange(request, response, filterChain, state);
+        } else if (state.hasAccessToken() && !state.isAccessTokenExpired(now)) {
+            if (state.isAccessTokenRenewalDue(now) && state.hasRefreshToken() && !renewAccessToken(state, request)) {
+                renewAccessTokenInline(request, response, filterChain, state);
+                return;
+            }
+            exposeTokenRecord(request, state.getTokenRecord());
+            passthrough(request, response, filterChain);
+        } else if (state.hasRefreshToken()) {
+            tryRefreshTokenGrant(request, response, filterChain, state);
         } else {
             passthrough(request, response, filterChain);
         }
     }
 
     /**
-     * Returns true if the http request matches the redirection URI. This should mean that the
+     * Returns true if the path of the http request is included and not excluded by the configured path patterns.
+     * Other requests, like static resources, pass the filter untouched. Redirection URIs are always handled.
+     *
+     * @param request the http request
+     * @return true, if the filter handles the request
+     */
+    public boolean isFilteredPath(HttpServletRequest request) {
+        if (includePaths == null && excludePaths == null) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        int from = request.getContextPath().length();
+        return (includePaths == null || includePaths.matches(path, from))
+                && (excludePaths == null || !excludePaths.matches(path, from));
+    }
+
+    /**
+     * Returns true if the http request matches one of the redirection URIs. This should mean that the
      * request is from a redirect of the authorization server.
      *
      * @param request the http request
      * @return true, if this request is redirected from an authorization server
      */
     public boolean isRedirectionURI(HttpServletRequest request) {
-        String requestURI = request.getRequestURL().toString();
-        String redirectionURI = config.getRedirectURI();
-        return cryptoblock.areEqual(requestURI, redirectionURI);
+        return redirectionURIs.match(request) != null;
+    }
+
+    /**
+     * Verifies the bearer token in the {@code Authorization} header of a request to a resource server. A valid
+     * access token is exposed as request attributes together with its claims, a request with an invalid token is
+     * denied. Requests without a bearer token pass without attributes. No http session is used.
+     *
+     * @param request the http request
+     * @param response the http response
+     * @param filterChain the filter chain
+     * @throws IOException if an I/O related error has occurred during the processing
+     * @throws ServletException if an exception has occurred that interferes with anything else
+     * @see <a href="https://tools.ietf.org/html/rfc6750#section-2.1">Authorization Request Header Field</a>
+     */
+    public void tryBearerToken(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+        String authorization = request.getHeader("Authorization");
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            passthrough(request, response, filterChain);
+            return;
+        }
+        String jwt = authorization.substring(7).trim();
+        VerifiedJwt verified = cognito.verifyAccessToken(jwt, webKeySet);
+        if (verified == null) {
+            logger.log(Level.WARNING, "outcome={0}, message=\"{1}\"", new Object[] { "denied", "invalid bearer token" });
+            response.setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\"");
+            deny(request, response, filterChain);
+            return;
+        }
+        request.setAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME, jwt);
+        request.setAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME, verified.getExpiration());
+        request.setAttribute(CLAIMS_ATTRIBUTE_NAME, verified);
+        passthrough(request, response, filterChain);
     }
 
     /**
@@ -128,46 +315,81 @@ public class MyOAuthFilter implements Filter {
      * @throws ServletException if an exception has occurred that interferes with anything else
      */
     public void tryAuthorizationCodeExchange(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException {
+        String redirectionURI = redirectionURIs.match(request);
+        RequestState state = RequestState.of(request, redirectionURI != null ? redirectionURI : config.getRedirectURI(), tokenStore);
+        tryAuthorizationCodeExchange(request, response, filterChain, state);
+    }
+
+    private void tryAuthorizationCodeExchange(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain, RequestState requestState) throws IOException, ServletException {
         String state = request.getParameter("state");
         String code = request.getParameter("code");
 
-        HttpSession httpSession = request.getSession();
-        String savedState = (String) httpSession.getAttribute(STATE_ATTRIBUTE_NAME);
-        String verifier = (String) httpSession.getAttribute(CODE_VERIFIER_ATTRIBUTE_NAME);
+        /* The session cookie keeps the login state in a cookie of its own, otherwise it is in the http session */
+        HttpSession httpSession = requestState.getSession();
+        String savedState;
+        String verifier;
+        SessionCookie sessionCookie = sessionCookie();
+        if (sessionCookie != null) {
+            Pkce login = sessionCookie.loadLogin(request);
+            savedState = login != null ? login.getState() : null;
+            verifier = login != null ? login.getCodeVerifier() : null;
+        } else if (httpSession != null) {
+            savedState = (String) httpSession.getAttribute(STATE_ATTRIBUTE_NAME);
+            verifier = (String) httpSession.getAttribute(CODE_VERIFIER_ATTRIBUTE_NAME);
+        } else {
+            /* Without a session there is no saved state to compare with */
+            logger.log(Level.WARNING, "outcome={0}, message=\"{1}\"", new Object[] { "denied", "no http session" });
+            deny(request, response, filterChain);
+            return;
+        }
 
         if (cryptoblock.areNotEqual(state, savedState)) {
-            logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { httpSession.getId(), "denied", "state mismatch" });
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "state mismatch" });
             deny(request, response, filterChain);
             return;
         }
 
-        Either<CognitoError, UserPoolToken> either = cognito.authorizationCodeExchange(code, verifier);
+        if (isAsync(request)) {
+            resumeAsync(request, response, httpSession, cognito.authorizationCodeExchangeAsync(code, verifier, requestState.getRedirectionURI()),
+                    either -> completeAuthorizationCodeExchange(request, response, filterChain, httpSession, either));
+            return;
+        }
+
+        Either<CognitoError, UserPoolToken> either = cognito.authorizationCodeExchange(code, verifier, requestState.getRedirectionURI());
+        completeAuthorizationCodeExchange(request, response, filterChain, httpSession, either);
+    }
+
+    /**
+     * Verifies and saves the user pool token of an authorization code exchange, then redirects the user.
+     *
+     * @return false, the response is always committed
+     */
+    private boolean completeAuthorizationCodeExchange(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                                      HttpSession httpSession, Either<CognitoError, UserPoolToken> either) throws IOException, ServletException {
         if (either.isLeft()) {
-            logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { httpSession.getId(), "denied", "authorization code exchange failed: " + either.getLeft() });
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "authorization code exchange failed: " + either.getLeft() });
             deny(request, response, filterChain);
-            return;
+            return false;
         }
 
         UserPoolToken userPoolToken = either.getRight();
-        Instant exp = Instant.now().plusSeconds(userPoolToken.getExpiresIn());
-        logger.log(Level.INFO, "sessionid={0}, outcome={1} message=\"{2}\", expires_in={3}", new Object[] { httpSession.getId(), "success", "authorization code exchange succeeded. new access token issued.", userPoolToken.getExpiresIn() });
+        Instant now = Instant.now();
+        logger.log(Level.INFO, "sessionid={0}, outcome={1} message=\"{2}\", expires_in={3}", new Object[] { sessionId(httpSession), "success", "authorization code exchange succeeded. new access token issued.", userPoolToken.getExpiresIn() });
 
-        if (!cognito.verify(userPoolToken.getAccessToken(), webKeySet)) {
-            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { httpSession.getId(), "denied", "authorization code exchange succeeded, but failed to verify the access token." });
+        if (cognito.verifyAccessToken(userPoolToken.getAccessToken(), webKeySet) == null) {
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "authorization code exchange succeeded, but failed to verify the access token." });
             deny(request, response, filterChain);
-            return;
+            return false;
         }
 
-        if (!cognito.verify(userPoolToken.getIdToken(), webKeySet)) {
-            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { httpSession.getId(), "denied", "authorization code exchange succeeded, but failed to verify the identity token." });
+        if (cognito.verifyIdToken(userPoolToken.getIdToken(), webKeySet) == null) {
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "authorization code exchange succeeded, but failed to verify the identity token." });
             deny(request, response, filterChain);
-            return;
+            return false;
         }
 
-        /* Save user pool token in the http session */
-        httpSession.setAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME, userPoolToken.getAccessToken());
-        httpSession.setAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME, exp);
-        httpSession.setAttribute(IDENTITY_TOKEN_ATTRIBUTE_NAME, userPoolToken.getIdToken());
+        /* Save user pool token in the token store */
+        saveUserPoolToken(request, response, httpSession, userPoolToken, now);
 
         /* Save the refresh token in a cookie */
         Cookie cookie = new Cookie(REFRESH_TOKEN_COOKIE_NAME, userPoolToken.getRefreshToken());
@@ -178,81 +400,294 @@ public class MyOAuthFilter implements Filter {
         response.addCookie(cookie);
 
         /* cleaning up */
-        httpSession.removeAttribute(STATE_ATTRIBUTE_NAME);
-        httpSession.removeAttribute(CODE_VERIFIER_ATTRIBUTE_NAME);
+        if (sessionCookie() != null) {
+            sessionCookie().removeLogin(response);
+        } else if (httpSession != null) {
+            httpSession.removeAttribute(STATE_ATTRIBUTE_NAME);
+            httpSession.removeAttribute(CODE_VERIFIER_ATTRIBUTE_NAME);
+        }
 
         /* redirect the user somewhere */
         response.sendRedirect("/index.xhtml");
+        return false;
     }
 
+    /*
+     * The checks below never create a http session. Anonymous requests and static resources would otherwise
+     * leave an empty session behind. A session is only created once there are tokens to store.
+     */
+
     public boolean hasAccessToken(HttpServletRequest request) {
-        HttpSession httpSession = request.getSession();
-        return httpSession.getAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME) != null;
+        return RequestState.of(request, null, tokenStore).hasAccessToken();
     }
 
     public boolean isAccessTokenExpired(HttpServletRequest request) {
-        HttpSession httpSession = request.getSession();
-        Instant exp = (Instant) httpSession.getAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME);
-        return !(Instant.now().isBefore(exp));
+        return RequestState.of(request, null, tokenStore).isAccessTokenExpired(Instant.now());
     }
 
-    public boolean hasRefreshToken(HttpServletRequest request) {
-        Cookie refreshTokenCookie = null;
-        // {@link HttpServletRequest#getCookies}
-        if (request.getCookies() != null) {
-            for (Cookie cookie : request.getCookies()) {
-                if (cookie.getName().equals(REFRESH_TOKEN_COOKIE_NAME)) {
-                    refreshTokenCookie = cookie;
-                }
+    /**
+     * Returns true if the access token is still valid, but has entered the refresh ahead window.
+     *
+     * @param request the http request
+     * @return true, if the access token should be renewed in the background
+     */
+    public boolean isAccessTokenRenewalDue(HttpServletRequest request) {
+        return RequestState.of(request, null, tokenStore).isAccessTokenRenewalDue(Instant.now());
+    }
+
+    /**
+     * Starts a refresh token grant in the background while the access token is still valid. The current request
+     * proceeds with the current token, the new tokens are saved in the token store once they arrive. If the
+     * renewal fails, the token is refreshed as usual after it has expired. Token stores that need the response
+     * to save, like the session cookie, are not renewed in the background.
+     *
+     * @param request the http request
+     */
+    public void renewAccessToken(HttpServletRequest request) {
+        renewAccessToken(RequestState.of(request, null, tokenStore), request);
+    }
+
+    /* Returns false if the token store cannot save in the background */
+    private boolean renewAccessToken(RequestState state, HttpServletRequest request) {
+        HttpSession httpSession = state.getSession();
+        Consumer<TokenRecord> saveLater = state.hasRefreshToken() ? tokenStore.saveLater(request, httpSession) : null;
+        if (saveLater == null) {
+            return false;
+        }
+        /* Further requests of this user do not start another renewal */
+        saveLater.accept(state.getTokenRecord().withRenewal(state.getAccessTokenExpiration()));
+
+        cognito.refreshTokenAsync(state.getRefreshToken()).whenComplete((either, throwable) -> {
+            if (throwable != null) {
+                logger.log(Level.WARNING, "sessionid=" + sessionId(httpSession) + ", outcome=failed, message=\"background renewal failed\"", throwable);
+                return;
+            }
+            if (either.isLeft()) {
+                logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "failed", "background renewal failed: " + either.getLeft() });
+                return;
+            }
+            UserPoolToken userPoolToken = either.getRight();
+            if (cognito.verifyAccessToken(userPoolToken.getAccessToken(), webKeySet) == null) {
+                logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "failed", "background renewal succeeded, but failed to verify the access token." });
+                return;
             }
+            saveLater.accept(tokenRecord(userPoolToken, Instant.now()));
+            logger.log(Level.INFO, "sessionid={0}, outcome={1}, message={2}, expires_in={3}", new Object[] { sessionId(httpSession), "success", "background renewal succeeded. new access token issued.", userPoolToken.getExpiresIn() });
+        });
+        return true;
+    }
+
+    /*
+     * Renews the access token on the current response, for token stores that cannot save in the background. The
+     * access token is still valid, so the request proceeds with it if the renewal fails.
+     */
+    private void renewAccessTokenInline(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain, RequestState state) throws IOException, ServletException {
+        if (isAsync(request)) {
+            CompletableFuture<Either<CognitoError, UserPoolToken>> future = cognito.refreshTokenAsync(state.getRefreshToken());
+            resumeAsync(request, response, state.getSession(), future.exceptionally(throwable -> {
+                        logger.log(Level.WARNING, "sessionid=" + sessionId(state.getSession()) + ", outcome=failed, message=\"renewal failed\"", throwable);
+                        return null;
+                    }),
+                    either -> completeInlineRenewal(request, response, state, either));
+            return;
         }
-        // TODO instead of looping, maybe store the information if a refresh token is present
-        // in the http session? Implications?
+        Either<CognitoError, UserPoolToken> either = null;
+        try {
+            either = cognito.refreshToken(state.getRefreshToken());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "sessionid=" + sessionId(state.getSession()) + ", outcome=failed, message=\"renewal failed\"", e);
+        }
+        completeInlineRenewal(request, response, state, either);
+        passthrough(request, response, filterChain);
+    }
 
-        return refreshTokenCookie != null;
+    /* Saves the renewed tokens, or keeps the current ones if the renewal failed, the request always proceeds */
+    private boolean completeInlineRenewal(HttpServletRequest request, HttpServletResponse response, RequestState state,
+                                          Either<CognitoError, UserPoolToken> either) {
+        HttpSession httpSession = state.getSession();
+        if (either != null && either.isLeft()) {
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "failed", "renewal failed: " + either.getLeft() });
+        } else if (either != null && cognito.verifyAccessToken(either.getRight().getAccessToken(), webKeySet) == null) {
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "failed", "renewal succeeded, but failed to verify the access token." });
+        } else if (either != null) {
+            UserPoolToken userPoolToken = either.getRight();
+            saveUserPoolToken(request, response, httpSession, userPoolToken, Instant.now());
+            logger.log(Level.INFO, "sessionid={0}, outcome={1}, message={2}, expires_in={3}", new Object[] { sessionId(httpSession), "success", "renewal succeeded. new access token issued.", userPoolToken.getExpiresIn() });
+            return true;
+        }
+        /* Further requests would try again right away */
+        TokenRecord record = state.getTokenRecord().withRenewal(state.getAccessTokenExpiration());
+        tokenStore.save(request, response, httpSession, record);
+        exposeTokenRecord(request, record);
+        return true;
+    }
+
+    /* Saves the access and identity token, and makes them available as request attributes */
+    private void saveUserPoolToken(HttpServletRequest request, HttpServletResponse response, HttpSession httpSession,
+                                   UserPoolToken userPoolToken, Instant now) {
+        TokenRecord record = tokenRecord(userPoolToken, now);
+        tokenStore.save(request, response, httpSession, record);
+        exposeTokenRecord(request, record);
+    }
+
+    /* The application finds the tokens under their attribute names in the request, whatever the token store */
+    private static void exposeTokenRecord(HttpServletRequest request, TokenRecord record) {
+        request.setAttribute(TOKEN_RECORD_ATTRIBUTE_NAME, record);
+        request.setAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME, record.getAccessToken());
+        request.setAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME, record.getExpiration());
+        request.setAttribute(IDENTITY_TOKEN_ATTRIBUTE_NAME, record.getIdentityToken());
+    }
+
+    /* The access and identity token, their expiration and when to renew them */
+    private TokenRecord tokenRecord(UserPoolToken userPoolToken, Instant now) {
+        long expiresIn = userPoolToken.getExpiresIn();
+        Instant renewal = null;
+        if (config.getRefreshAheadPercent() > 0) {
+            long ahead = expiresIn * config.getRefreshAheadPercent() / 100;
+            renewal = now.plusSeconds(expiresIn - ahead);
+        }
+        return new TokenRecord(userPoolToken.getAccessToken(), userPoolToken.getIdToken(), now.plusSeconds(expiresIn), renewal);
+    }
+
+    public boolean hasRefreshToken(HttpServletRequest request) {
+        return RequestState.of(request, null, tokenStore).hasRefreshToken();
     }
 
     /**
      * Initiates refresh token flow
      */
     public void tryRefreshTokenGrant(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException  {
-        HttpSession httpSession  = request.getSession();
+        tryRefreshTokenGrant(request, response, filterChain, RequestState.of(request, null, tokenStore));
+    }
 
-        Cookie refreshTokenCookie = null;
-        for (Cookie cookie : request.getCookies()) {
-            if (cookie.getName().equals(REFRESH_TOKEN_COOKIE_NAME)) {
-                refreshTokenCookie = cookie;
-            }
+    private void tryRefreshTokenGrant(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain, RequestState state) throws IOException, ServletException  {
+        /* The token store creates a http session on save, if it keeps the tokens there */
+        HttpSession httpSession = state.getSession();
+        String refreshToken = state.getRefreshToken();
+
+        if (isAsync(request)) {
+            resumeAsync(request, response, httpSession, cognito.refreshTokenAsync(refreshToken),
+                    either -> completeRefreshTokenGrant(request, response, filterChain, httpSession, either));
+            return;
         }
 
-        Either<CognitoError, UserPoolToken> either = cognito.refreshToken(refreshTokenCookie.getValue());
+        Either<CognitoError, UserPoolToken> either = cognito.refreshToken(refreshToken);
+        if (completeRefreshTokenGrant(request, response, filterChain, httpSession, either)) {
+            passthrough(request, response, filterChain);
+        }
+    }
+
+    /**
+     * Verifies and saves the user pool token of a refresh token grant.
+     *
+     * @return true if the filter chain can proceed, false if the request was denied
+     */
+    private boolean completeRefreshTokenGrant(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                              HttpSession httpSession, Either<CognitoError, UserPoolToken> either) throws IOException, ServletException {
         if (either.isLeft()) {
-            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { httpSession.getId(), "denied", "refresh token grant flow failed: " + either.getLeft() });
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "refresh token grant flow failed: " + either.getLeft() });
+            tokenStore.remove(request, response, httpSession);
             deny(request, response, filterChain);
-            return;
+            return false;
         }
 
         UserPoolToken userPoolToken = either.getRight();
-        Instant exp = Instant.now().plusSeconds(userPoolToken.getExpiresIn());
+        Instant now = Instant.now();
 
-        logger.log(Level.INFO, "sessionid={0}, outcome={1}, message={2}, expires_in={3}", new Object[] { httpSession.getId(), "success", "refresh token grant flow succeeded. new access token issued.", userPoolToken.getExpiresIn() });
+        logger.log(Level.INFO, "sessionid={0}, outcome={1}, message={2}, expires_in={3}", new Object[] { sessionId(httpSession), "success", "refresh token grant flow succeeded. new access token issued.", userPoolToken.getExpiresIn() });
 
-        if (!cognito.verify(userPoolToken.getAccessToken(), webKeySet)) {
-            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { httpSession.getId(), "denied", "authorization code exchange succeeded, but failed to verify the access token." });
+        if (cognito.verifyAccessToken(userPoolToken.getAccessToken(), webKeySet) == null) {
+            logger.log(Level.WARNING, "sessionid={0}, outcome={1} message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "authorization code exchange succeeded, but failed to verify the access token." });
             deny(request, response, filterChain);
-            return;
+            return false;
         }
 
-        /* Save user pool token in the http session */
-        httpSession.setAttribute(ACCESS_TOKEN_ATTRIBUTE_NAME, userPoolToken.getAccessToken());
-        httpSession.setAttribute(ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME, exp);
-        httpSession.setAttribute(IDENTITY_TOKEN_ATTRIBUTE_NAME, userPoolToken.getIdToken());
+        /* Save user pool token in the token store */
+        saveUserPoolToken(request, response, httpSession, userPoolToken, now);
+        return true;
+    }
 
-        passthrough(request, response, filterChain);
+    /* Requests wait for the token endpoint without a container thread */
+    private boolean isAsync(HttpServletRequest request) {
+        return config.isAsyncBackchannel() && request.isAsyncSupported();
     }
 
+    /**
+     * Puts the request into asynchronous mode until the token endpoint responds. The request is then dispatched
+     * again if {@code completion} returns true, or completed with the response {@code completion} has written.
+     * <p>
+     * The token endpoint times out on its own, for connecting and for the response. The container timeout is only a fallback.
+     */
+    private void resumeAsync(HttpServletRequest request, HttpServletResponse response, HttpSession httpSession,
+                             CompletableFuture<Either<CognitoError, UserPoolToken>> future, Completion completion) {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(config.getBackchannelTimeout().multipliedBy(3).toMillis());
+        AtomicBoolean done = new AtomicBoolean();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    future.cancel(true);
+                    logger.log(Level.WARNING, "sessionid={0}, outcome={1}, message=\"{2}\"", new Object[] { sessionId(httpSession), "denied", "token endpoint timed out" });
+                    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) { }
+
+            @Override
+            public void onError(AsyncEvent event) { }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) { }
+        });
+        future.whenComplete((either, throwable) -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (throwable != null) {
+                    logger.log(Level.WARNING, "sessionid=" + sessionId(httpSession) + ", outcome=denied, message=\"token endpoint failed\"", throwable);
+                    response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    asyncContext.complete();
+                } else if (completion.apply(either)) {
+                    request.setAttribute(RESUMED_ATTRIBUTE_NAME, Boolean.TRUE);
+                    asyncContext.dispatch();
+                } else {
+                    asyncContext.complete();
+                }
+            } catch (IOException | ServletException | RuntimeException e) {
+                logger.log(Level.SEVERE, "unable to resume request sessionid=" + sessionId(httpSession), e);
+                asyncContext.complete();
+            }
+        });
+    }
+
+    /* Unless the tokens are kept in the http session, a request may have none */
+    private static String sessionId(HttpSession httpSession) {
+        return httpSession != null ? httpSession.getId() : "-";
+    }
+
+    /* Continues a request once the token endpoint responded, returns true to proceed with the filter chain */
+    private interface Completion {
+        boolean apply(Either<CognitoError, UserPoolToken> either) throws IOException, ServletException;
+    }
+
+    /**
+     * Continues the filter chain. A request with tokens gets a http session that also holds them under the
+     * attribute names of earlier versions.
+     *
+     * @param request the http request
+     * @param response the http response
+     * @param filterChain the filter chain
+     * @throws IOException if an I/O related error has occurred during the processing
+     * @throws ServletException if an exception has occurred that interferes with anything else
+     */
     public void passthrough(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException  {
-        filterChain.doFilter(request, response);
+        Object record = request.getAttribute(TOKEN_RECORD_ATTRIBUTE_NAME);
+        filterChain.doFilter(record instanceof TokenRecord ? new TokenRecordRequest(request, (TokenRecord) record) : request, response);
     }
 
     public void deny(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws IOException, ServletException  {
@@ -260,6 +695,20 @@ public class MyOAuthFilter implements Filter {
     }
 
     @Override
-    public void destroy() { }
+    public void destroy() {
+        if (webKeySet != null) {
+            webKeySet.close();
+        }
+        if (pkcePool != null) {
+            pkcePool.close();
+        }
+        if (tokenStore instanceof Closeable) {
+            try {
+                ((Closeable) tokenStore).close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "unable to close the session store", e);
+            }
+        }
+    }
 
 }
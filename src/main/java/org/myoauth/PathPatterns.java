@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled set of path patterns, used to include or exclude requests from {@code MyOAuthFilter}.
+ * <p>
+ * Four kinds of patterns are supported:
+ * <ul>
+ *     <li>exact paths like {@code /favicon.ico}</li>
+ *     <li>prefixes like {@code /static/*}, matching {@code /static} and everything below</li>
+ *     <li>suffixes like {@code *.css} or {@code *-min.js}, matching in any directory</li>
+ *     <li>globs like <code>/img/*&#47;thumb-?.png</code>, where {@code *} and {@code ?} stay within a path
+ *     segment and {@code **} matches across segments</li>
+ * </ul>
+ * Exact paths and prefixes share a trie, suffixes are kept in a trie of reversed strings. Matching walks
+ * the path once per trie and does not allocate. Only globs fall back to regular expressions.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ */
+final class PathPatterns {
+
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+    private final List<Pattern> globs = new ArrayList<>();
+
+    private PathPatterns() { }
+
+    /**
+     * Compiles path patterns.
+     *
+     * @param patterns the patterns, each starting with {@code /} or {@code *}
+     * @return the compiled patterns
+     * @throws IllegalArgumentException if a pattern starts with another character
+     */
+    static PathPatterns compile(List<String> patterns) {
+        PathPatterns compiled = new PathPatterns();
+        for (String pattern : patterns) {
+            compiled.add(pattern);
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns true if a pattern starts with a valid character.
+     */
+    static boolean isValid(String pattern) {
+        return !pattern.isEmpty() && (pattern.charAt(0) == '/' || pattern.charAt(0) == '*');
+    }
+
+    private void add(String pattern) {
+        if (!isValid(pattern)) {
+            throw new IllegalArgumentException("path pattern must start with / or *: " + pattern);
+        }
+        int wildcard = indexOfWildcard(pattern, 0);
+        if (wildcard == -1) {
+            insert(prefixes, pattern).terminal = true;
+        } else if (wildcard == pattern.length() - 1 && pattern.endsWith("/*")
+                || wildcard == pattern.length() - 2 && pattern.endsWith("/**")) {
+            /* "/static/*" matches "/static" too */
+            Node node = insert(prefixes, pattern.substring(0, wildcard - 1));
+            node.terminal = true;
+            node.add('/').subtree = true;
+        } else if (wildcard == 0 && indexOfWildcard(pattern, 1) == -1) {
+            insert(suffixes, new StringBuilder(pattern.substring(1)).reverse()).terminal = true;
+        } else {
+            globs.add(glob(pattern));
+        }
+    }
+
+    /**
+     * Returns true if the path, ignoring path parameters like {@code ;jsessionid=}, matches one of the patterns.
+     *
+     * @param path the path, for example from {@code HttpServletRequest#getRequestURI}
+     * @param from the index the path starts at, for example after the context path
+     * @return true, if a pattern matches
+     */
+    boolean matches(String path, int from) {
+        int to = path.indexOf(';', from);
+        if (to == -1) {
+            to = path.length();
+        }
+        return matchesPrefix(path, from, to) || matchesSuffix(path, from, to) || matchesGlob(path, from, to);
+    }
+
+    private boolean matchesPrefix(String path, int from, int to) {
+        Node node = prefixes;
+        for (int i = from; ; i++) {
+            if (node.subtree) {
+                return true;
+            }
+            if (i == to) {
+                return node.terminal;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    private boolean matchesSuffix(String path, int from, int to) {
+        Node node = suffixes;
+        if (node.terminal) {
+            return true;
+        }
+        for (int i = to - 1; i >= from; i--) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesGlob(String path, int from, int to) {
+        if (globs.isEmpty()) {
+            return false;
+        }
+        String s = path.substring(from, to);
+        for (Pattern glob : globs) {
+            if (glob.matcher(s).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfWildcard(String pattern, int from) {
+        for (int i = from; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Node insert(Node root, CharSequence s) {
+        Node node = root;
+        for (int i = 0; i < s.length(); i++) {
+            node = node.add(s.charAt(i));
+        }
+        return node;
+    }
+
+    private static Pattern glob(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int literal = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (literal < i) {
+                regex.append(Pattern.quote(pattern.substring(literal, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^/]*");
+            }
+            literal = i + 1;
+        }
+        if (literal < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(literal)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /* A trie node, children are sorted by character */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+
+        /* a pattern ends here */
+        boolean terminal;
+
+        /* everything below matches */
+        boolean subtree;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node add(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insert = -(i + 1);
+            char[] k = new char[keys.length + 1];
+            Node[] n = new Node[children.length + 1];
+            System.arraycopy(keys, 0, k, 0, insert);
+            System.arraycopy(children, 0, n, 0, insert);
+            System.arraycopy(keys, insert, k, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, n, insert + 1, children.length - insert);
+            k[insert] = c;
+            n[insert] = new Node();
+            keys = k;
+            children = n;
+            return n[insert];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+/**
+ * The state and the PKCE code verifier and challenge of one authorization request.
+ */
+public final class Pkce {
+
+    /**
+     * The number of random bits of the state
+     */
+    public static final int STATE_BITS = 128;
+
+    private final String state;
+    private final String codeVerifier;
+    private final String codeChallenge;
+
+    /* The code challenge can be null where only the state and the code verifier are kept */
+    Pkce(String state, String codeVerifier, String codeChallenge) {
+        this.state = state;
+        this.codeVerifier = codeVerifier;
+        this.codeChallenge = codeChallenge;
+    }
+
+    /**
+     * Creates a new state, code verifier and code challenge.
+     *
+     * @param cryptoblock the source of randomness and hashing
+     * @return a new instance
+     */
+    public static Pkce create(Cryptoblock cryptoblock) {
+        String codeVerifier = cryptoblock.codeVerifier();
+        return new Pkce(cryptoblock.random(STATE_BITS), codeVerifier, cryptoblock.codeChallenge(codeVerifier));
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getCodeVerifier() {
+        return codeVerifier;
+    }
+
+    public String getCodeChallenge() {
+        return codeChallenge;
+    }
+
+}
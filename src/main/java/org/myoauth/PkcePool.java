@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of ready-made authorization request parameters, so that a burst of logins does not wait for the
+ * random number generator and SHA-256. A background thread tops the pool up after each take.
+ * <p>
+ * Each {@link Pkce} is handed out once. If the pool is empty, the caller creates one and a miss is counted.
+ */
+public final class PkcePool implements Closeable {
+
+    private final Cryptoblock cryptoblock;
+    private final BlockingQueue<Pkce> pool;
+    private final int capacity;
+    private final ExecutorService executor;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param cryptoblock the source of randomness and hashing
+     * @param capacity the maximum number of parameters kept ready, positive
+     */
+    public PkcePool(Cryptoblock cryptoblock, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        this.cryptoblock = cryptoblock;
+        this.capacity = capacity;
+        this.pool = new ArrayBlockingQueue<>(capacity);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "myoauth-pkce");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fills the pool in the background.
+     */
+    public void start() {
+        refill();
+    }
+
+    /**
+     * Returns parameters for a new authorization request, which nobody else receives.
+     *
+     * @return state, code verifier and code challenge, never null
+     */
+    public Pkce take() {
+        Pkce pkce = pool.poll();
+        if (pkce == null) {
+            misses.increment();
+            pkce = Pkce.create(cryptoblock);
+        } else {
+            hits.increment();
+        }
+        if (!refilling.get()) {
+            refill();
+        }
+        return pkce;
+    }
+
+    private void refill() {
+        if (refilling.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::fill);
+            } catch (RejectedExecutionException e) {
+                /* closed */
+                refilling.set(false);
+            }
+        }
+    }
+
+    private void fill() {
+        try {
+            while (pool.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+                pool.offer(Pkce.create(cryptoblock));
+            }
+        } finally {
+            refilling.set(false);
+        }
+        /* takers that emptied slots before the flag was cleared could not schedule a refill */
+        if (pool.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+            refill();
+        }
+    }
+
+    /**
+     * Returns the number of parameters ready to be taken.
+     *
+     * @return the depth of the pool
+     */
+    public int depth() {
+        return pool.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Stops the refills and discards the parameters in the pool.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        pool.clear();
+    }
+
+}
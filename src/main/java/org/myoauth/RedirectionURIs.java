@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Matches requests against the redirection URIs of the app client.
+ * <p>
+ * The URIs are split into scheme, host, port and path once. A request is compared part by part, starting with
+ * the path, so the full request URL is never built. Redirection URIs are not secret, a plain comparison is fine.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ */
+final class RedirectionURIs {
+
+    private final Entry[] entries;
+
+    private RedirectionURIs(Entry[] entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Parses the redirection URIs.
+     *
+     * @param redirectURIs absolute http or https URIs
+     * @return a matcher
+     * @throws IllegalArgumentException if an URI cannot be parsed
+     */
+    static RedirectionURIs of(List<String> redirectURIs) {
+        Entry[] entries = new Entry[redirectURIs.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry(redirectURIs.get(i));
+        }
+        return new RedirectionURIs(entries);
+    }
+
+    /**
+     * Returns the redirection URI that matches the request.
+     *
+     * @param request the http request
+     * @return the redirection URI as configured, or null if none matches
+     */
+    String match(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (path == null) {
+            return null;
+        }
+        for (Entry entry : entries) {
+            if (entry.path.equals(path)
+                    && entry.port == request.getServerPort()
+                    && entry.host.equalsIgnoreCase(request.getServerName())
+                    && entry.scheme.equalsIgnoreCase(request.getScheme())) {
+                return entry.uri;
+            }
+        }
+        return null;
+    }
+
+    /* A redirection URI split into the parts a request provides */
+    private static final class Entry {
+
+        final String uri;
+        final String scheme;
+        final String host;
+        final int port;
+        final String path;
+
+        Entry(String uri) {
+            URI parsed = URI.create(uri);
+            if (parsed.getScheme() == null || parsed.getHost() == null) {
+                throw new IllegalArgumentException("not an absolute URI: " + uri);
+            }
+            this.uri = uri;
+            this.scheme = parsed.getScheme();
+            this.host = parsed.getHost();
+            this.port = parsed.getPort() != -1 ? parsed.getPort() : "https".equalsIgnoreCase(scheme) ? 443 : 80;
+            this.path = parsed.getRawPath() == null || parsed.getRawPath().isEmpty() ? "/" : parsed.getRawPath();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+import java.time.Instant;
+
+import static org.myoauth.MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME;
+
+/**
+ * What {@code MyOAuthFilter} needs to know about a request. The http session, the token record, the refresh
+ * token cookie and the request URI are read once, and all branches of the filter share the result.
+ * <p>
+ * Reading the state never creates a http session.
+ */
+final class RequestState {
+
+    /* null, if the request does not match a redirection URI */
+    private final String redirectionURI;
+
+    /* null, if the request has no session */
+    private final HttpSession session;
+
+    /* null, if there are no tokens */
+    private final TokenRecord tokenRecord;
+
+    /* null, if there is no refresh token cookie */
+    private final String refreshToken;
+
+    private RequestState(String redirectionURI, HttpSession session, TokenRecord tokenRecord, String refreshToken) {
+        this.redirectionURI = redirectionURI;
+        this.session = session;
+        this.tokenRecord = tokenRecord;
+        this.refreshToken = refreshToken;
+    }
+
+    /**
+     * Reads the state of a request.
+     *
+     * @param request the http request
+     * @param redirectionURI the redirection URI the request matches, or null
+     * @param tokenStore where the tokens are kept
+     * @return the request state
+     */
+    static RequestState of(HttpServletRequest request, String redirectionURI, TokenStore tokenStore) {
+        String refreshToken = null;
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals(REFRESH_TOKEN_COOKIE_NAME)) {
+                    refreshToken = cookie.getValue();
+                    break;
+                }
+            }
+        }
+        HttpSession session = request.getSession(false);
+        return new RequestState(redirectionURI, session, tokenStore.load(request, session), refreshToken);
+    }
+
+    boolean isRedirection() {
+        return redirectionURI != null;
+    }
+
+    String getRedirectionURI() {
+        return redirectionURI;
+    }
+
+    HttpSession getSession() {
+        return session;
+    }
+
+    boolean hasAccessToken() {
+        return tokenRecord != null;
+    }
+
+    TokenRecord getTokenRecord() {
+        return tokenRecord;
+    }
+
+    Instant getAccessTokenExpiration() {
+        return tokenRecord != null ? tokenRecord.getExpiration() : null;
+    }
+
+    boolean isAccessTokenExpired(Instant now) {
+        return tokenRecord == null || !now.isBefore(tokenRecord.getExpiration());
+    }
+
+    boolean isAccessTokenRenewalDue(Instant now) {
+        return tokenRecord != null && tokenRecord.getRenewal() != null && !now.isBefore(tokenRecord.getRenewal());
+    }
+
+    boolean hasRefreshToken() {
+        return refreshToken != null;
+    }
+
+    String getRefreshToken() {
+        return refreshToken;
+    }
+}
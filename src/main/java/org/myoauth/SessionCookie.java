@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Keeps the access and identity token in an encrypted cookie on the client, instead of the http session.
+ * Any node can then serve any request.
+ * <p>
+ * The cookie value is {@code version | key id | iv | ciphertext | tag}, base64url encoded. The content is
+ * encrypted and authenticated with AES-GCM, the cookie name is bound as additional authenticated data.
+ * The first key encrypts, all keys decrypt. A new key is rolled out by putting it in front, an old key is
+ * retired by removing it once its cookies have expired.
+ * <p>
+ * Browsers drop cookies larger than 4096 bytes, Cognito tokens easily exceed this. The value is therefore split
+ * into chunks of at most {@value #CHUNK_LENGTH} characters, kept in the cookies {@code __Host-myoauth_session},
+ * {@code __Host-myoauth_session.1} and so on. Tokens that need more than {@value #MAX_CHUNKS} chunks are not
+ * saved, a warning is logged.
+ * <p>
+ * The state and code verifier of a login are kept in the cookie {@code __Host-myoauth_login}, encrypted the same
+ * way and valid for ten minutes, so that no http session is needed at all.
+ * <p>
+ * A cookie renewed in the background has no response to go to, this store does not save later. The filter
+ * renews the tokens instead while the request that finds the renewal due waits.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ */
+final class SessionCookie implements TokenStore {
+
+    static final String COOKIE_NAME = "__Host-myoauth_session";
+
+    /* Leaves room for the name and the attributes below the 4096 bytes browsers accept per cookie */
+    static final int CHUNK_LENGTH = 3800;
+    static final int MAX_CHUNKS = 4;
+
+    private static final byte VERSION = 2;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_ID_LENGTH = 4;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int HEADER_LENGTH = 1 + KEY_ID_LENGTH + IV_LENGTH;
+
+    private static final long NO_RENEWAL = Long.MIN_VALUE;
+
+    private static final byte[] AAD = COOKIE_NAME.getBytes(US_ASCII);
+
+    /* Holds the state and code verifier between the start of a login and its callback */
+    static final String LOGIN_COOKIE_NAME = "__Host-myoauth_login";
+    static final Duration LOGIN_MAX_AGE = Duration.ofMinutes(10);
+
+    private static final byte[] LOGIN_AAD = LOGIN_COOKIE_NAME.getBytes(US_ASCII);
+
+    private final Logger logger = Logger.getLogger(getClass().getPackageName());
+
+    private final SecretKey[] keys;
+    private final int[] keyIds;
+    private final Cryptoblock cryptoblock = Cryptoblock.getInstance();
+
+    /**
+     * Creates a session cookie codec.
+     *
+     * @param keys AES keys, the first one encrypts
+     * @throws IllegalArgumentException if there is no key
+     */
+    SessionCookie(List<SecretKey> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("no session cookie key");
+        }
+        this.keys = keys.toArray(new SecretKey[0]);
+        this.keyIds = new int[this.keys.length];
+        for (int i = 0; i < this.keys.length; i++) {
+            keyIds[i] = keyId(this.keys[i]);
+        }
+    }
+
+    /* The first bytes of the SHA-256 hash of a key, stable across reordering */
+    private static int keyId(SecretKey key) {
+        return ByteBuffer.wrap(Digests.sha256(key.getEncoded())).getInt();
+    }
+
+    @Override
+    public TokenRecord load(HttpServletRequest request, HttpSession session) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        String[] chunks = new String[MAX_CHUNKS];
+        for (Cookie cookie : cookies) {
+            int index = chunkIndex(cookie.getName());
+            if (index >= 0 && index < MAX_CHUNKS) {
+                chunks[index] = cookie.getValue();
+            }
+        }
+        if (chunks[0] == null) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder(chunks[0]);
+        for (int i = 1; i < MAX_CHUNKS && chunks[i] != null; i++) {
+            value.append(chunks[i]);
+        }
+        return decode(value.toString());
+    }
+
+    @Override
+    public void save(HttpServletRequest request, HttpServletResponse response, HttpSession session, TokenRecord record) {
+        String value = encode(record);
+        int count = (value.length() + CHUNK_LENGTH - 1) / CHUNK_LENGTH;
+        if (count > MAX_CHUNKS) {
+            logger.warning(() -> "tokens exceed " + MAX_CHUNKS + " session cookies of " + CHUNK_LENGTH + " characters, not stored");
+            remove(request, response, session);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            response.addCookie(cookie(chunkName(i), value.substring(i * CHUNK_LENGTH, Math.min(value.length(), (i + 1) * CHUNK_LENGTH))));
+        }
+        /* chunks of a longer value would be appended to this one */
+        expireChunks(request, response, count);
+    }
+
+    @Override
+    public void remove(HttpServletRequest request, HttpServletResponse response, HttpSession session) {
+        Cookie cookie = cookie(COOKIE_NAME, "");
+        cookie.setMaxAge(0);
+        response.addCookie(cookie);
+        expireChunks(request, response, 1);
+    }
+
+    private static void expireChunks(HttpServletRequest request, HttpServletResponse response, int from) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return;
+        }
+        for (Cookie present : cookies) {
+            if (chunkIndex(present.getName()) >= from) {
+                Cookie cookie = cookie(present.getName(), "");
+                cookie.setMaxAge(0);
+                response.addCookie(cookie);
+            }
+        }
+    }
+
+    static String chunkName(int index) {
+        return index == 0 ? COOKIE_NAME : COOKIE_NAME + "." + index;
+    }
+
+    /* The index of a session cookie chunk, or -1 for other cookies */
+    private static int chunkIndex(String name) {
+        if (!name.startsWith(COOKIE_NAME)) {
+            return -1;
+        }
+        if (name.length() == COOKIE_NAME.length()) {
+            return 0;
+        }
+        if (name.charAt(COOKIE_NAME.length()) != '.') {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(name.substring(COOKIE_NAME.length() + 1));
+            return index > 0 ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Cookie cookie(String name, String value) {
+        Cookie cookie = new Cookie(name, value);
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setSecure(true);
+        return cookie;
+    }
+
+    /**
+     * Saves the state and code verifier of a login in a short-lived cookie, so that the login callback does not
+     * need a http session.
+     *
+     * @param response the http response
+     * @param pkce the state and code verifier
+     */
+    void saveLogin(HttpServletResponse response, Pkce pkce) {
+        byte[] state = pkce.getState().getBytes(US_ASCII);
+        byte[] codeVerifier = pkce.getCodeVerifier().getBytes(US_ASCII);
+        ByteBuffer plaintext = ByteBuffer.allocate(8 + 4 + state.length + 4 + codeVerifier.length);
+        plaintext.putLong(Instant.now().getEpochSecond());
+        plaintext.putInt(state.length).put(state);
+        plaintext.putInt(codeVerifier.length).put(codeVerifier);
+        Cookie cookie = cookie(LOGIN_COOKIE_NAME, seal(plaintext.array(), LOGIN_AAD));
+        cookie.setMaxAge((int) LOGIN_MAX_AGE.getSeconds());
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Loads the state and code verifier of a login.
+     *
+     * @param request the http request to the login callback
+     * @return the state and code verifier without a code challenge, or null if the cookie is missing, expired,
+     *         tampered with or encrypted with an unknown key
+     */
+    Pkce loadLogin(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (cookie.getName().equals(LOGIN_COOKIE_NAME)) {
+                return decodeLogin(cookie.getValue());
+            }
+        }
+        return null;
+    }
+
+    private Pkce decodeLogin(String cookieValue) {
+        byte[] plaintext = open(cookieValue, LOGIN_AAD);
+        if (plaintext == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+            Instant issued = Instant.ofEpochSecond(buffer.getLong());
+            if (issued.plus(LOGIN_MAX_AGE).isBefore(Instant.now())) {
+                return null;
+            }
+            return new Pkce(string(buffer), string(buffer), null);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    void removeLogin(HttpServletResponse response) {
+        Cookie cookie = cookie(LOGIN_COOKIE_NAME, "");
+        cookie.setMaxAge(0);
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Encrypts the tokens into the value of the session cookie, before it is split into chunks.
+     *
+     * @param record the tokens
+     * @return the base64url encoded value
+     */
+    String encode(TokenRecord record) {
+        byte[] accessToken = record.getAccessToken().getBytes(US_ASCII);
+        byte[] identityToken = record.getIdentityToken() != null ? record.getIdentityToken().getBytes(US_ASCII) : new byte[0];
+        ByteBuffer plaintext = ByteBuffer.allocate(8 + 8 + 4 + accessToken.length + 4 + identityToken.length);
+        plaintext.putLong(record.getExpiration().getEpochSecond());
+        plaintext.putLong(record.getRenewal() != null ? record.getRenewal().getEpochSecond() : NO_RENEWAL);
+        plaintext.putInt(accessToken.length).put(accessToken);
+        plaintext.putInt(identityToken.length).put(identityToken);
+        return seal(plaintext.array(), AAD);
+    }
+
+    /**
+     * Decrypts a session cookie.
+     *
+     * @param cookieValue the value of the cookie
+     * @return the tokens, or null if the cookie is malformed, tampered with or encrypted with an unknown key
+     */
+    TokenRecord decode(String cookieValue) {
+        byte[] plaintext = open(cookieValue, AAD);
+        if (plaintext == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+            Instant expiration = Instant.ofEpochSecond(buffer.getLong());
+            long renewal = buffer.getLong();
+            String accessToken = string(buffer);
+            String identityToken = string(buffer);
+            return new TokenRecord(accessToken, identityToken, expiration, renewal != NO_RENEWAL ? Instant.ofEpochSecond(renewal) : null);
+        } catch (RuntimeException e) {
+            /* authenticated, but not written by this version */
+            return null;
+        }
+    }
+
+    /* Encrypts with the first key, the cookie name is the additional authenticated data */
+    private String seal(byte[] plaintext, byte[] aad) {
+        byte[] value = new byte[HEADER_LENGTH + plaintext.length + TAG_LENGTH];
+        ByteBuffer header = ByteBuffer.wrap(value);
+        header.put(VERSION).putInt(keyIds[0]);
+        byte[] iv = new byte[IV_LENGTH];
+        cryptoblock.nextBytes(iv);
+        header.put(iv);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, keys[0], new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            cipher.updateAAD(aad);
+            cipher.doFinal(plaintext, 0, plaintext.length, value, HEADER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+    }
+
+    /* The plaintext, or null if the value is malformed, tampered with or encrypted with an unknown key */
+    private byte[] open(String cookieValue, byte[] aad) {
+        byte[] value;
+        try {
+            value = Base64.getUrlDecoder().decode(cookieValue);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (value.length < HEADER_LENGTH + TAG_LENGTH || value[0] != VERSION) {
+            return null;
+        }
+        int keyId = ByteBuffer.wrap(value, 1, KEY_ID_LENGTH).getInt();
+        for (int i = 0; i < keys.length; i++) {
+            if (keyIds[i] == keyId) {
+                try {
+                    Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                    cipher.init(Cipher.DECRYPT_MODE, keys[i], new GCMParameterSpec(TAG_LENGTH * 8, value, 1 + KEY_ID_LENGTH, IV_LENGTH));
+                    cipher.updateAAD(aad);
+                    return cipher.doFinal(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+                } catch (GeneralSecurityException e) {
+                    /* tampered with */
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, US_ASCII);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.time.Instant;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The access and identity token of a user, as kept by a {@link TokenStore} between requests.
+ * <p>
+ * In the http session the record is a single attribute, so a replicating session manager ships one object per
+ * refresh instead of one per token. The tokens are serialized as ASCII bytes and the instants as seconds since the
+ * epoch, a record serializes to little more than the tokens themselves. In memory the tokens stay strings, so
+ * exposing them to each request copies nothing.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ */
+public final class TokenRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long NO_RENEWAL = Long.MIN_VALUE;
+
+    private final String accessToken;
+
+    /* null, if there is no identity token */
+    private final String identityToken;
+
+    private final long expiration;
+    private final long renewal;
+
+    /**
+     * Creates a token record.
+     *
+     * @param accessToken the access token, not null
+     * @param identityToken the identity token, can be null
+     * @param expiration when the access token expires, not null
+     * @param renewal when the access token is renewed ahead of time, or null
+     */
+    public TokenRecord(String accessToken, String identityToken, Instant expiration, Instant renewal) {
+        this(requireNonNull(accessToken, "accessToken"), identityToken,
+                requireNonNull(expiration, "expiration").getEpochSecond(),
+                renewal != null ? renewal.getEpochSecond() : NO_RENEWAL);
+    }
+
+    private TokenRecord(String accessToken, String identityToken, long expiration, long renewal) {
+        this.accessToken = accessToken;
+        this.identityToken = identityToken;
+        this.expiration = expiration;
+        this.renewal = renewal;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public String getIdentityToken() {
+        return identityToken;
+    }
+
+    public Instant getExpiration() {
+        return Instant.ofEpochSecond(expiration);
+    }
+
+    /**
+     * Returns when the access token is renewed in the background.
+     *
+     * @return the instant, or null if the token is not renewed ahead of time
+     */
+    public Instant getRenewal() {
+        return renewal != NO_RENEWAL ? Instant.ofEpochSecond(renewal) : null;
+    }
+
+    /**
+     * Returns a copy of this record with another renewal instant.
+     *
+     * @param renewal when the access token is renewed ahead of time, or null
+     * @return a token record
+     */
+    public TokenRecord withRenewal(Instant renewal) {
+        return new TokenRecord(accessToken, identityToken, expiration, renewal != null ? renewal.getEpochSecond() : NO_RENEWAL);
+    }
+
+    private Object writeReplace() {
+        return new Form(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("serialized form required");
+    }
+
+    /**
+     * The serialized form: {@code version | expiration | renewal | access token | identity token}, each token
+     * prefixed with its length, -1 for no identity token.
+     */
+    static final class Form implements Externalizable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final byte VERSION = 1;
+
+        private TokenRecord record;
+
+        /* Used by serialization */
+        public Form() {
+        }
+
+        Form(TokenRecord record) {
+            this.record = record;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeByte(VERSION);
+            out.writeLong(record.expiration);
+            out.writeLong(record.renewal);
+            write(out, record.accessToken);
+            write(out, record.identityToken);
+        }
+
+        private static void write(ObjectOutput out, String token) throws IOException {
+            if (token == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = token.getBytes(US_ASCII);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            if (in.readByte() != VERSION) {
+                throw new InvalidObjectException("version");
+            }
+            long expiration = in.readLong();
+            long renewal = in.readLong();
+            String accessToken = string(in);
+            if (accessToken == null) {
+                throw new InvalidObjectException("accessToken");
+            }
+            record = new TokenRecord(accessToken, string(in), expiration, renewal);
+        }
+
+        private static String string(ObjectInput in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, US_ASCII);
+        }
+
+        private Object readResolve() {
+            return record;
+        }
+    }
+}
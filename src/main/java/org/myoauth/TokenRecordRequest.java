@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionContext;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.myoauth.MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME;
+import static org.myoauth.MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME;
+
+/**
+ * The request the application sees once it has tokens. Earlier versions kept the tokens in the http session
+ * attributes {@code org.myoauth.access_token}, {@code org.myoauth.access_token.expiration},
+ * {@code org.myoauth.access_token.renewal} and {@code org.myoauth.identity_token}. The session of this request
+ * still answers to these names, whatever the token store, with the fields of the token record.
+ * <p>
+ * In the http session the record saved last wins, so a renewal that completed in the background shows up
+ * right away. All other attributes and methods go to the session of the container.
+ */
+final class TokenRecordRequest extends HttpServletRequestWrapper {
+
+    private final TokenRecord record;
+    private Session session;
+
+    TokenRecordRequest(HttpServletRequest request, TokenRecord record) {
+        super(request);
+        this.record = record;
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        HttpSession httpSession = super.getSession(create);
+        if (httpSession == null) {
+            return null;
+        }
+        if (session == null || session.httpSession != httpSession) {
+            session = new Session(httpSession, record);
+        }
+        return session;
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    /* The attribute names of earlier versions mapped to the token record */
+    static final class Session implements HttpSession {
+
+        private static final Set<String> NAMES = Set.of(ACCESS_TOKEN_ATTRIBUTE_NAME, ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME,
+                ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME, IDENTITY_TOKEN_ATTRIBUTE_NAME);
+
+        private final HttpSession httpSession;
+        private final TokenRecord record;
+
+        Session(HttpSession httpSession, TokenRecord record) {
+            this.httpSession = httpSession;
+            this.record = record;
+        }
+
+        private TokenRecord record() {
+            Object saved = httpSession.getAttribute(TOKEN_RECORD_ATTRIBUTE_NAME);
+            return saved instanceof TokenRecord ? (TokenRecord) saved : record;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            if (!NAMES.contains(name)) {
+                return httpSession.getAttribute(name);
+            }
+            TokenRecord current = record();
+            switch (name) {
+                case ACCESS_TOKEN_ATTRIBUTE_NAME:
+                    return current.getAccessToken();
+                case ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME:
+                    return current.getExpiration();
+                case ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME:
+                    return current.getRenewal();
+                default:
+                    return current.getIdentityToken();
+            }
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            Set<String> names = new LinkedHashSet<>(Collections.list(httpSession.getAttributeNames()));
+            for (String name : NAMES) {
+                if (getAttribute(name) != null) {
+                    names.add(name);
+                }
+            }
+            return Collections.enumeration(names);
+        }
+
+        @Override
+        public long getCreationTime() {
+            return httpSession.getCreationTime();
+        }
+
+        @Override
+        public String getId() {
+            return httpSession.getId();
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            return httpSession.getLastAccessedTime();
+        }
+
+        @Override
+        public ServletContext getServletContext() {
+            return httpSession.getServletContext();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(int interval) {
+            httpSession.setMaxInactiveInterval(interval);
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            return httpSession.getMaxInactiveInterval();
+        }
+
+        @Override
+        @Deprecated
+        public HttpSessionContext getSessionContext() {
+            return httpSession.getSessionContext();
+        }
+
+        @Override
+        @Deprecated
+        public Object getValue(String name) {
+            return getAttribute(name);
+        }
+
+        @Override
+        @Deprecated
+        public String[] getValueNames() {
+            return Collections.list(getAttributeNames()).toArray(new String[0]);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            httpSession.setAttribute(name, value);
+        }
+
+        @Override
+        @Deprecated
+        public void putValue(String name, Object value) {
+            setAttribute(name, value);
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            httpSession.removeAttribute(name);
+        }
+
+        @Override
+        @Deprecated
+        public void removeValue(String name) {
+            removeAttribute(name);
+        }
+
+        @Override
+        public void invalidate() {
+            httpSession.invalidate();
+        }
+
+        @Override
+        public boolean isNew() {
+            return httpSession.isNew();
+        }
+    }
+}
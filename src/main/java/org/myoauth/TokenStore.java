@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps the {@link TokenRecord} of a user between requests.
+ * <p>
+ * {@code MyOAuthFilter} reads the http session of a request once and passes it to the store, a store must not
+ * create a http session while loading. Implementations must be thread-safe.
+ */
+public interface TokenStore {
+
+    /**
+     * Loads the token record of a request.
+     *
+     * @param request the http request
+     * @param session the http session of the request, or null
+     * @return the token record, or null if there is none
+     */
+    TokenRecord load(HttpServletRequest request, HttpSession session);
+
+    /**
+     * Saves the token record of a request, replacing the previous one.
+     *
+     * @param request the http request
+     * @param response the http response, the store may add cookies
+     * @param session the http session of the request, or null
+     * @param record the token record
+     */
+    void save(HttpServletRequest request, HttpServletResponse response, HttpSession session, TokenRecord record);
+
+    /**
+     * Removes the token record of a request, if any.
+     *
+     * @param request the http request
+     * @param response the http response, the store may add cookies
+     * @param session the http session of the request, or null
+     */
+    void remove(HttpServletRequest request, HttpServletResponse response, HttpSession session);
+
+    /**
+     * Returns a function that saves the token record of a request once the request has completed, for tokens
+     * renewed in the background. Stores that need the response to save return null, the default.
+     *
+     * @param request the http request
+     * @param session the http session of the request, or null
+     * @return a function that saves the token record, or null
+     */
+    default Consumer<TokenRecord> saveLater(HttpServletRequest request, HttpSession session) {
+        return null;
+    }
+}
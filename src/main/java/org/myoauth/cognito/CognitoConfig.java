@@ -18,7 +18,16 @@ package org.myoauth.cognito;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -36,15 +45,60 @@ public class CognitoConfig {
     private final String clientSecret;
     private final String prefixDomainName;
     private final String region;
-    private final String redirectURI;
+    private final List<String> redirectURIs;
+    private final int verifiedTokenCacheSize;
+    private final Duration jwksRefreshInterval;
+    private final Duration jwksMinimumRefreshInterval;
+    private final Path jwksSnapshot;
+    private final boolean lazyJwksBootstrap;
+    private final Duration backchannelTimeout;
+    private final boolean asyncBackchannel;
+    private final int refreshAheadPercent;
+    private final List<String> includePaths;
+    private final List<String> excludePaths;
+    private final boolean bearerAuthentication;
+    private final String sessionStore;
+    private final List<SecretKey> sessionCookieKeys;
+    private final int sessionStoreSize;
+    private final Path sessionStoreFile;
+    private final int pkcePoolSize;
 
-    private CognitoConfig(String userPoolId, String clientId, String clientSecret, String prefixDomainName, String region, String redirectURI) {
+    /* Defaults of optional init parameters */
+    static final int DEFAULT_VERIFIED_TOKEN_CACHE_SIZE = 10_000;
+    static final int DEFAULT_JWKS_REFRESH_INTERVAL = 3600;
+    static final int DEFAULT_JWKS_MINIMUM_REFRESH_INTERVAL = 60;
+    static final int DEFAULT_BACKCHANNEL_TIMEOUT = 10;
+    static final int DEFAULT_REFRESH_AHEAD_PERCENT = 10;
+    static final int DEFAULT_SESSION_STORE_SIZE = 10_000;
+
+    private CognitoConfig(String userPoolId, String clientId, String clientSecret, String prefixDomainName, String region, List<String> redirectURIs,
+                          int verifiedTokenCacheSize, Duration jwksRefreshInterval, Duration jwksMinimumRefreshInterval,
+                          Path jwksSnapshot, boolean lazyJwksBootstrap, Duration backchannelTimeout, boolean asyncBackchannel,
+                          int refreshAheadPercent, List<String> includePaths, List<String> excludePaths,
+                          boolean bearerAuthentication, String sessionStore, List<SecretKey> sessionCookieKeys, int sessionStoreSize, Path sessionStoreFile,
+                          int pkcePoolSize) {
         this.userPoolId       = requireNonNull(userPoolId, "userPoolId") ;
         this.clientId         = requireNonNull(clientId, "clientId");
         this.clientSecret     = requireNonNull(clientSecret, "clientSecret");
         this.prefixDomainName = requireNonNull(prefixDomainName, "prefixDomainName");
         this.region           = requireNonNull(region, "region");
-        this.redirectURI      = requireNonNull(redirectURI, "redirectURI");
+        this.redirectURIs     = List.copyOf(requireNonNull(redirectURIs, "redirectURIs"));
+        this.verifiedTokenCacheSize = verifiedTokenCacheSize;
+        this.jwksRefreshInterval = jwksRefreshInterval;
+        this.jwksMinimumRefreshInterval = jwksMinimumRefreshInterval;
+        this.jwksSnapshot = jwksSnapshot;
+        this.lazyJwksBootstrap = lazyJwksBootstrap;
+        this.backchannelTimeout = backchannelTimeout;
+        this.asyncBackchannel = asyncBackchannel;
+        this.refreshAheadPercent = refreshAheadPercent;
+        this.includePaths = List.copyOf(includePaths);
+        this.excludePaths = List.copyOf(excludePaths);
+        this.bearerAuthentication = bearerAuthentication;
+        this.sessionStore = sessionStore;
+        this.sessionCookieKeys = List.copyOf(sessionCookieKeys);
+        this.sessionStoreSize = sessionStoreSize;
+        this.sessionStoreFile = sessionStoreFile;
+        this.pkcePoolSize = pkcePoolSize;
     }
 
     public String getUserPoolId() {
@@ -67,8 +121,214 @@ public class CognitoConfig {
         return region;
     }
 
+    /**
+     * Returns the first redirection URI. It is used for authorization requests unless the caller picks another one.
+     *
+     * @return the redirection URI
+     */
     public String getRedirectURI() {
-        return redirectURI;
+        return redirectURIs.get(0);
+    }
+
+    /**
+     * Returns all redirection URIs, the callback URLs of the app client.
+     * <p>
+     * Init parameter {@code redirectURI}, several URIs are separated by commas or whitespace.
+     *
+     * @return the redirection URIs, not empty
+     */
+    public List<String> getRedirectURIs() {
+        return redirectURIs;
+    }
+
+    /**
+     * Returns the maximum number of verified tokens kept in memory. Zero disables the cache.
+     * <p>
+     * Init parameter {@code verifiedTokenCacheSize}, optional.
+     *
+     * @return the maximum cache size
+     */
+    public int getVerifiedTokenCacheSize() {
+        return verifiedTokenCacheSize;
+    }
+
+    /**
+     * Returns the time between two scheduled reloads of the JSON Web Key Set.
+     * <p>
+     * Init parameter {@code jwksRefreshInterval} in seconds, optional.
+     *
+     * @return refresh interval
+     */
+    public Duration getJwksRefreshInterval() {
+        return jwksRefreshInterval;
+    }
+
+    /**
+     * Returns the minimum time between two reloads of the JSON Web Key Set, including reloads
+     * triggered by tokens with an unknown key id.
+     * <p>
+     * Init parameter {@code jwksMinimumRefreshInterval} in seconds, optional.
+     *
+     * @return minimum refresh interval
+     */
+    public Duration getJwksMinimumRefreshInterval() {
+        return jwksMinimumRefreshInterval;
+    }
+
+    /**
+     * Returns the file that keeps a copy of the JSON Web Key Set between restarts.
+     * <p>
+     * Init parameter {@code jwksSnapshot}, optional.
+     *
+     * @return snapshot file, can be null
+     */
+    public Path getJwksSnapshot() {
+        return jwksSnapshot;
+    }
+
+    /**
+     * Returns true if the filter starts without a JSON Web Key Set when there is no snapshot, and loads
+     * the keys in the background. Otherwise the filter loads the keys before it serves any request.
+     * <p>
+     * Init parameter {@code jwksBootstrap}, either {@code eager} (default) or {@code lazy}.
+     *
+     * @return true for a lazy bootstrap
+     */
+    public boolean isLazyJwksBootstrap() {
+        return lazyJwksBootstrap;
+    }
+
+    /**
+     * Returns how long to wait for Amazon Cognito on the backchannel, for connecting and for each response.
+     * <p>
+     * Init parameter {@code backchannelTimeout} in seconds, optional.
+     *
+     * @return backchannel timeout
+     */
+    public Duration getBackchannelTimeout() {
+        return backchannelTimeout;
+    }
+
+    /**
+     * Returns true if the filter puts the request into asynchronous mode while it waits for the token endpoint,
+     * instead of blocking a container thread.
+     * <p>
+     * Init parameter {@code backchannelMode}, either {@code blocking} (default) or {@code async}.
+     *
+     * @return true for the asynchronous mode
+     */
+    public boolean isAsyncBackchannel() {
+        return asyncBackchannel;
+    }
+
+    /**
+     * Returns the share of an access token's lifetime, in percent, in which the filter already renews the token in
+     * the background. Zero disables the renewal, the token is then refreshed after it has expired.
+     * <p>
+     * Init parameter {@code refreshAheadPercent}, optional, less than 100.
+     *
+     * @return refresh ahead window in percent
+     */
+    public int getRefreshAheadPercent() {
+        return refreshAheadPercent;
+    }
+
+    /**
+     * Returns the path patterns of requests the filter handles. If empty, the filter handles all requests
+     * that are not excluded.
+     * <p>
+     * Init parameter {@code includePaths}, optional. Patterns are separated by commas or whitespace, see
+     * {@link #getExcludePaths()}.
+     *
+     * @return path patterns, can be empty
+     */
+    public List<String> getIncludePaths() {
+        return includePaths;
+    }
+
+    /**
+     * Returns the path patterns of requests that pass the filter untouched, like static resources. Patterns
+     * are relative to the context path: exact paths ({@code /favicon.ico}), prefixes ({@code /static/*}),
+     * suffixes ({@code *.css}) and globs (<code>/img/**&#47;*.png</code>).
+     * <p>
+     * Init parameter {@code excludePaths}, optional. Patterns are separated by commas or whitespace.
+     *
+     * @return path patterns, can be empty
+     */
+    public List<String> getExcludePaths() {
+        return excludePaths;
+    }
+
+    /**
+     * Returns true if the filter acts as resource server. It then verifies the access token in the
+     * {@code Authorization} header of each request instead of running the Authorization Code Flow, and never
+     * uses a http session.
+     * <p>
+     * Init parameter {@code authenticationMode}, either {@code browser} (default) or {@code bearer}.
+     *
+     * @return true for bearer tokens
+     */
+    public boolean isBearerAuthentication() {
+        return bearerAuthentication;
+    }
+
+    /**
+     * Returns where the access and identity token are kept between requests: {@code http} in the http session,
+     * {@code cookie} in an encrypted cookie, {@code memory} in a bounded map of this JVM and {@code file} in a
+     * memory-mapped file that the JVMs of one host share.
+     * <p>
+     * Init parameter {@code sessionStore}, optional, {@code http} by default.
+     *
+     * @return the session store
+     */
+    public String getSessionStore() {
+        return sessionStore;
+    }
+
+    /**
+     * Returns the AES keys of the session cookie. The first key encrypts, all keys decrypt.
+     * <p>
+     * Init parameter {@code sessionCookieKeys}, base64 encoded keys of 128, 192 or 256 bit, separated by commas
+     * or whitespace. Required if {@code sessionStore} is {@code cookie}.
+     *
+     * @return the keys, empty unless the tokens are kept in a cookie
+     */
+    public List<SecretKey> getSessionCookieKeys() {
+        return sessionCookieKeys;
+    }
+
+    /**
+     * Returns the maximum number of users whose tokens are kept by the {@code memory} or {@code file} session store.
+     * <p>
+     * Init parameter {@code sessionStoreSize}, optional.
+     *
+     * @return the capacity of the session store
+     */
+    public int getSessionStoreSize() {
+        return sessionStoreSize;
+    }
+
+    /**
+     * Returns the path of the memory-mapped file of the {@code file} session store.
+     * <p>
+     * Init parameter {@code sessionStoreFile}, required if {@code sessionStore} is {@code file}.
+     *
+     * @return the path, or null
+     */
+    public Path getSessionStoreFile() {
+        return sessionStoreFile;
+    }
+
+    /**
+     * Returns the number of ready-made states, code verifiers and code challenges kept for login bursts.
+     * Zero disables the pool.
+     * <p>
+     * Init parameter {@code pkcePoolSize}, optional.
+     *
+     * @return the capacity of the pool
+     */
+    public int getPkcePoolSize() {
+        return pkcePoolSize;
     }
 
     /**
@@ -82,8 +342,9 @@ public class CognitoConfig {
     public static CognitoConfig from(FilterConfig filterConfig) throws ServletException {
         requireNonNull(filterConfig, "filterConfig");
 
-        /* Accumulator of missing parameters */
+        /* Accumulator of missing and invalid parameters */
         Set<String> missing = new HashSet<>();
+        Set<String> invalid = new HashSet<>();
 
         String userPoolId       = from(filterConfig, "userPoolId", missing);
         String clientId         = from(filterConfig, "clientId", missing);
@@ -91,12 +352,53 @@ public class CognitoConfig {
         String region           = from(filterConfig, "region", missing);
         String prefixDomainName = from(filterConfig, "prefixDomainName", missing);
         String redirectURI      = from(filterConfig, "redirectURI", missing);
+        List<String> redirectURIs = redirectURIs(redirectURI, invalid);
 
-        if (missing.isEmpty()) {
-            return new CognitoConfig(userPoolId, clientId, clientSecret, prefixDomainName, region, redirectURI);
-        } else {
+        int verifiedTokenCacheSize     = from(filterConfig, "verifiedTokenCacheSize", DEFAULT_VERIFIED_TOKEN_CACHE_SIZE, invalid);
+        int jwksRefreshInterval        = from(filterConfig, "jwksRefreshInterval", DEFAULT_JWKS_REFRESH_INTERVAL, invalid);
+        int jwksMinimumRefreshInterval = from(filterConfig, "jwksMinimumRefreshInterval", DEFAULT_JWKS_MINIMUM_REFRESH_INTERVAL, invalid);
+        if (jwksRefreshInterval == 0) {
+            invalid.add("jwksRefreshInterval");
+        }
+        int backchannelTimeout         = from(filterConfig, "backchannelTimeout", DEFAULT_BACKCHANNEL_TIMEOUT, invalid);
+        if (backchannelTimeout == 0) {
+            invalid.add("backchannelTimeout");
+        }
+        int refreshAheadPercent        = from(filterConfig, "refreshAheadPercent", DEFAULT_REFRESH_AHEAD_PERCENT, invalid);
+        if (refreshAheadPercent >= 100) {
+            invalid.add("refreshAheadPercent");
+        }
+        List<String> includePaths = paths(filterConfig, "includePaths", invalid);
+        List<String> excludePaths = paths(filterConfig, "excludePaths", invalid);
+        String authenticationMode = from(filterConfig, "authenticationMode", Set.of("browser", "bearer"), "browser", invalid);
+        String sessionStore = from(filterConfig, "sessionStore", Set.of("http", "cookie", "memory", "file"), "http", invalid);
+        List<SecretKey> sessionCookieKeys = "cookie".equals(sessionStore) ? keys(filterConfig, "sessionCookieKeys", invalid) : List.of();
+        int sessionStoreSize = from(filterConfig, "sessionStoreSize", DEFAULT_SESSION_STORE_SIZE, invalid);
+        if (sessionStoreSize == 0) {
+            invalid.add("sessionStoreSize");
+        }
+        String sessionStoreFile = filterConfig.getInitParameter("sessionStoreFile");
+        if ("file".equals(sessionStore) && sessionStoreFile == null) {
+            missing.add("sessionStoreFile");
+        }
+        String jwksSnapshot  = filterConfig.getInitParameter("jwksSnapshot");
+        int pkcePoolSize = from(filterConfig, "pkcePoolSize", 0, invalid);
+        String jwksBootstrap = from(filterConfig, "jwksBootstrap", Set.of("eager", "lazy"), "eager", invalid);
+        String backchannelMode = from(filterConfig, "backchannelMode", Set.of("blocking", "async"), "blocking", invalid);
+
+        if (!missing.isEmpty()) {
             String missingParameters = missing.stream().collect(Collectors.joining(", ", "[", "]"));
             throw new ServletException("Missing required init parameters: " + missingParameters  + "\nCheck your OAuthFilter configuration in web.xml");
+        } else if (!invalid.isEmpty()) {
+            String invalidParameters = invalid.stream().collect(Collectors.joining(", ", "[", "]"));
+            throw new ServletException("Invalid init parameters: " + invalidParameters  + "\nCheck your OAuthFilter configuration in web.xml");
+        } else {
+            return new CognitoConfig(userPoolId, clientId, clientSecret, prefixDomainName, region, redirectURIs,
+                    verifiedTokenCacheSize, Duration.ofSeconds(jwksRefreshInterval), Duration.ofSeconds(jwksMinimumRefreshInterval),
+                    jwksSnapshot == null ? null : Path.of(jwksSnapshot), "lazy".equals(jwksBootstrap),
+                    Duration.ofSeconds(backchannelTimeout), "async".equals(backchannelMode), refreshAheadPercent,
+                    includePaths, excludePaths, "bearer".equals(authenticationMode), sessionStore, sessionCookieKeys, sessionStoreSize,
+                    sessionStoreFile == null ? null : Path.of(sessionStoreFile), pkcePoolSize);
         }
     }
 
@@ -108,4 +410,105 @@ public class CognitoConfig {
         return value;
     }
 
+    /* One or more absolute http(s) URIs, separated by commas or whitespace */
+    private static List<String> redirectURIs(String value, Set<String> invalid) {
+        if (value == null) {
+            return List.of();
+        }
+        List<String> redirectURIs = split(value);
+        for (String s : redirectURIs) {
+            try {
+                URI uri = new URI(s);
+                if (uri.getHost() == null || !("https".equalsIgnoreCase(uri.getScheme()) || "http".equalsIgnoreCase(uri.getScheme()))) {
+                    invalid.add("redirectURI");
+                }
+            } catch (URISyntaxException e) {
+                invalid.add("redirectURI");
+            }
+        }
+        if (redirectURIs.isEmpty()) {
+            invalid.add("redirectURI");
+        }
+        return redirectURIs;
+    }
+
+    /* Optional path patterns, each starting with / or * */
+    private static List<String> paths(FilterConfig filterConfig, String name, Set<String> invalid) {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return List.of();
+        }
+        List<String> paths = split(value);
+        for (String path : paths) {
+            if (path.charAt(0) != '/' && path.charAt(0) != '*') {
+                invalid.add(name);
+            }
+        }
+        return paths;
+    }
+
+    /* Base64 encoded AES keys */
+    private static List<SecretKey> keys(FilterConfig filterConfig, String name, Set<String> invalid) {
+        String value = filterConfig.getInitParameter(name);
+        List<SecretKey> keys = new ArrayList<>();
+        for (String s : value == null ? List.<String>of() : split(value)) {
+            try {
+                byte[] key = Base64.getDecoder().decode(s);
+                if (key.length == 16 || key.length == 24 || key.length == 32) {
+                    keys.add(new SecretKeySpec(key, "AES"));
+                    continue;
+                }
+            } catch (IllegalArgumentException e) {
+                /* reported below */
+            }
+            invalid.add(name);
+        }
+        if (keys.isEmpty()) {
+            invalid.add(name);
+        }
+        return keys;
+    }
+
+    /* Values separated by commas or whitespace */
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        for (String s : value.trim().split("[,\\s]+")) {
+            if (!s.isEmpty()) {
+                values.add(s);
+            }
+        }
+        return values;
+    }
+
+    /* Optional parameter with a fixed set of values */
+    private static String from(FilterConfig filterConfig, String name, Set<String> values, String defaultValue, Set<String> invalid) {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!values.contains(value.trim())) {
+            invalid.add(name);
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /* Optional non-negative integer parameter */
+    private static int from(FilterConfig filterConfig, String name, int defaultValue, Set<String> invalid) {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            if (i >= 0) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            /* reported below */
+        }
+        invalid.add(name);
+        return defaultValue;
+    }
+
 }
@@ -16,15 +16,15 @@
 package org.myoauth.cognito;
 
 import jakarta.json.Json;
-import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
 import org.myoauth.Cryptoblock;
 import org.myoauth.Either;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -32,9 +32,13 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.Signature;
+import java.security.SignatureException;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
@@ -55,11 +59,23 @@ public class CognitoService {
     /* TOKEN Endpoint */
     private final URI token;
 
+    /* JSON Web Key Set of the user pool */
+    private final URI jwks;
+
+    /* The iss claim of tokens issued by the user pool */
+    private final String issuer;
+
     /* Base 64 encoded client_id and client_secret */
     private final String authorizationHeaderValue;
 
     /* Instances are thread-safe */
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final HttpClient httpClient;
+
+    /* Tokens with a verified signature */
+    private final VerifiedTokenCache verifiedTokens;
+
+    /* Refresh token grants in flight, by refresh token */
+    private final ConcurrentHashMap<String, RefreshGrant> refreshGrants = new ConcurrentHashMap<>();
 
     /**
      * Creates a new CognitoService
@@ -67,23 +83,48 @@ public class CognitoService {
      * @param config
      */
     public CognitoService(CognitoConfig config) {
-        this.config = config;
-
-        var uri = new StringBuilder()
-                .append("https://")
-                .append(config.getPrefixDomainName())
-                .append(".auth.")
-                .append(config.getRegion())
-                .append(".amazoncognito.com")
-                .toString();
-        this.authorization = URI.create(uri + "/oauth2/authorize");
-        this.token = URI.create(uri + "/oauth2/token");
+        this(config,
+                URI.create(new StringBuilder()
+                        .append("https://")
+                        .append(config.getPrefixDomainName())
+                        .append(".auth.")
+                        .append(config.getRegion())
+                        .append(".amazoncognito.com")
+                        .toString()),
+                URI.create(new StringBuilder()
+                        .append("https://cognito-idp.")
+                        .append(config.getRegion())
+                        .append(".amazonaws.com/")
+                        .append(config.getUserPoolId())
+                        .append("/.well-known/jwks.json")
+                        .toString()));
+    }
 
+    /* Allows tests to point the service to a local server */
+    CognitoService(CognitoConfig config, URI domain, URI jwks) {
+        this.config = config;
+        this.authorization = URI.create(domain + "/oauth2/authorize");
+        this.token = URI.create(domain + "/oauth2/token");
+        this.jwks = jwks;
+        this.issuer = "https://cognito-idp." + config.getRegion() + ".amazonaws.com/" + config.getUserPoolId();
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(config.getBackchannelTimeout())
+                .build();
 
         var credentials = Base64.getEncoder()
                 .encodeToString((config.getClientId() + ":" + config.getClientSecret())
                         .getBytes(US_ASCII));
         this.authorizationHeaderValue = "Basic " + credentials;
+        this.verifiedTokens = new VerifiedTokenCache(config.getVerifiedTokenCacheSize());
+    }
+
+    /**
+     * Returns the cache of tokens with a verified signature, for example to read its hit and miss counts.
+     *
+     * @return the verified token cache, not null
+     */
+    public VerifiedTokenCache getVerifiedTokenCache() {
+        return verifiedTokens;
     }
 
 
@@ -93,10 +134,20 @@ public class CognitoService {
      * @return an instance of {@code URI}, not null
      */
     public URI authorizationRequest(String state, String challenge) {
+        return authorizationRequest(state, challenge, config.getRedirectURI());
+    }
+
+    /**
+     * Returns the #{@code URI} of the Amazon Cognito Authorization Endpoint for one of several redirection URIs.
+     *
+     * @param redirectURI one of the configured redirection URIs
+     * @return an instance of {@code URI}, not null
+     */
+    public URI authorizationRequest(String state, String challenge, String redirectURI) {
         var queryString = new StringJoiner("&", "?", "")
                 .add(requestParameter("response_type", "code"))
                 .add(requestParameter("client_id", config.getClientId()))
-                .add(requestParameter("redirect_uri", config.getRedirectURI()))
+                .add(requestParameter("redirect_uri", redirectURI))
                 .add(requestParameter("state", state))
                 .add(requestParameter("code_challenge", challenge))
                 .add(requestParameter("code_challenge_method", "S256"))
@@ -113,19 +164,56 @@ public class CognitoService {
      * @throws IOException if an I/O related error has occurred during the processing
      */
     public Either<CognitoError, UserPoolToken> authorizationCodeExchange(String code, String verifier) throws IOException {
+        return authorizationCodeExchange(code, verifier, config.getRedirectURI());
+    }
+
+    /**
+     * Authorization Code Exchange for a code that was sent to one of several redirection URIs.
+     *
+     * @param redirectURI the redirection URI of the authorization request
+     * @throws IOException if an I/O related error has occurred during the processing
+     */
+    public Either<CognitoError, UserPoolToken> authorizationCodeExchange(String code, String verifier, String redirectURI) throws IOException {
+        return await(authorizationCodeExchangeAsync(code, verifier, redirectURI));
+    }
+
+    /**
+     * Authorization Code Exchange without blocking the calling thread.
+     * <p>
+     * The returned future completes exceptionally with an {@code IOException} if an I/O related error has occurred,
+     * including a timeout of the backchannel. Cancelling the future abandons the request.
+     *
+     * @param code the authorization code
+     * @param verifier the PKCE code verifier
+     * @return a future of either a Cognito User Pool Token or an error
+     */
+    public CompletableFuture<Either<CognitoError, UserPoolToken>> authorizationCodeExchangeAsync(String code, String verifier) {
+        return authorizationCodeExchangeAsync(code, verifier, config.getRedirectURI());
+    }
+
+    /**
+     * Authorization Code Exchange without blocking the calling thread, for a code that was sent to one of several
+     * redirection URIs.
+     *
+     * @param code the authorization code
+     * @param verifier the PKCE code verifier
+     * @param redirectURI the redirection URI of the authorization request
+     * @return a future of either a Cognito User Pool Token or an error
+     */
+    public CompletableFuture<Either<CognitoError, UserPoolToken>> authorizationCodeExchangeAsync(String code, String verifier, String redirectURI) {
         requireNonNull(code, "code");
-        requireNonNull(code, "verifier");
+        requireNonNull(verifier, "verifier");
+        requireNonNull(redirectURI, "redirectURI");
 
         var parameters = new StringJoiner("&")
                 .add(requestParameter("grant_type", "authorization_code"))
                 .add(requestParameter("client_id", config.getClientId()))
                 .add(requestParameter("code", code))
                 .add(requestParameter("code_verifier", verifier))
-                .add(requestParameter("redirect_uri", config.getRedirectURI()))
+                .add(requestParameter("redirect_uri", redirectURI))
                 .toString();
 
-        return contactTokenEndpoint(parameters);
-
+        return contactTokenEndpointAsync(parameters);
     }
 
     /**
@@ -137,18 +225,20 @@ public class CognitoService {
      * @see <a href="https://www.rfc-editor.org/rfc/rfc7515.txt">JSON Web Signature (JWS)</a>
      */
     public List<JWK> jwks() throws IOException {
-        List<JWK> keys = new ArrayList<>();
-
-        var uri = URI.create(new StringBuilder()
-                .append("https://cognito-idp.")
-                .append(config.getRegion())
-                .append(".amazonaws.com/")
-                .append(config.getUserPoolId())
-                .append("/.well-known/jwks.json")
-                .toString());
+        return new ArrayList<>(jwkSet().keys());
+    }
 
+    /**
+     * Loads the JSON Web Key Set (JWKS) from Amazon Cognito for the specified user pool
+     * and indexes it by key id.
+     *
+     * @return a key set, not null
+     * @throws IOException if an I/O related error has occurred during the processing
+     */
+    public JwkSet jwkSet() throws IOException {
         HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(uri)
+                .uri(jwks)
+                .timeout(config.getBackchannelTimeout())
                 .build();
 
         HttpResponse<InputStream> httpResponse = null;
@@ -159,21 +249,15 @@ public class CognitoService {
             throw new IOException("an interrupt happened during http");
         }
 
-        InputStream inputStream = httpResponse.body();
-        JsonReader jsonReader = Json.createReader(inputStream);
-        JsonObject jsonObject = jsonReader.readObject();
-        JsonArray jsonArray = jsonObject.getJsonArray("keys");
-        for (int i = 0; i < jsonArray.size(); i++) {
-            jsonObject = jsonArray.getJsonObject(i);
-            JWK jwk = JWK.from(jsonObject);
-            keys.add(jwk);
+        try (InputStream inputStream = httpResponse.body()) {
+            if (httpResponse.statusCode() != SC_OK) {
+                throw new IOException(MessageFormat.format("unable to load JSON Web Key Set with statusCode={0}", httpResponse.statusCode()));
+            }
+            JsonReader jsonReader = Json.createReader(inputStream);
+            return JwkSet.from(jsonReader.readObject());
+        } catch (JsonException | ClassCastException | NullPointerException e) {
+            throw new IOException("malformed JSON Web Key Set", e);
         }
-
-        if (inputStream != null) {
-            inputStream.close();
-        }
-
-        return keys;
     }
 
     /**
@@ -184,66 +268,275 @@ public class CognitoService {
      * @see <a href="https://docs.aws.amazon.com/cognito/latest/developerguide/amazon-cognito-user-pools-using-tokens-verifying-a-jwt.html">Verifying a JSON Web Token</a>
      */
     public boolean verify(String jwt, List<JWK> jwks) {
+        requireNonNull(jwks, "jwks");
+        return verify(jwt, JwkSet.of(jwks));
+    }
+
+    /**
+     * Verifies an Amazon Cognito JSON Web Token (JWT) with RSASSA-PKCS1-v1_5 SHA-256
+     * against a key set indexed by key id.
+     * <p>
+     * Tokens that have been verified before are looked up in the {@link VerifiedTokenCache} and skip the signature
+     * check until they expire.
+     *
+     * @param jwt a JSON Web Token
+     * @param jwks the key set
+     * @return true if the signature is valid
+     * @see <a href="https://docs.aws.amazon.com/cognito/latest/developerguide/amazon-cognito-user-pools-using-tokens-verifying-a-jwt.html">Verifying a JSON Web Token</a>
+     */
+    public boolean verify(String jwt, JwkSet jwks) {
+        requireNonNull(jwks, "jwks");
+        return verify(jwt, jwks, null);
+    }
+
+    /**
+     * Verifies an Amazon Cognito JSON Web Token (JWT) with RSASSA-PKCS1-v1_5 SHA-256
+     * against the key set of a {@code JwkSetManager}. A token signed with an unknown key
+     * makes the manager reload the key set.
+     *
+     * @param jwt a JSON Web Token
+     * @param keys the key set manager
+     * @return true if the signature is valid
+     */
+    public boolean verify(String jwt, JwkSetManager keys) {
+        requireNonNull(keys, "keys");
+        return verify(jwt, keys.get(), keys);
+    }
+
+    private boolean verify(String jwt, JwkSet jwks, JwkSetManager keys) {
+        return verifySignature(jwt, jwks, keys) != null;
+    }
+
+    /* Returns the token with its claims if the signature is valid, otherwise null */
+    private VerifiedJwt verifySignature(String jwt, JwkSet jwks, JwkSetManager keys) {
         requireNonNull(jwt, "jwt");
-        requireNonNull(jwt, "jwks");
 
-        boolean verified = false;
+        VerifiedJwt cached = verifiedTokens.get(jwt, jwks);
+        if (cached != null) {
+            return cached;
+        }
 
         // 1. Decode the ID token.
-        String[] parts = jwt.split("\\.");
-        if (parts.length != 3) {
+        Jws jws = Jws.parse(jwt);
+        if (jws == null) {
             logger.warning(() -> "access token does not appear to be a JWT");
-            return false;
+            return null;
+        }
+        if (!"RS256".equals(jws.getAlg())) {
+            logger.warning(() -> MessageFormat.format("Unexpected algorithm alg={0}. JWT invalid", jws.getAlg()));
+            return null;
         }
-
-        String header = parts[0];
-        String payload = parts[1];
-        Base64.Decoder decoder = Base64.getUrlDecoder();
-        byte[] signature = decoder.decode(parts[2]);
 
         // 2. Compare the local key ID (kid) to the public kid.
-        String headerJson = new String(cryptoblock.base64UrlDecode(header));
-        JsonReader jsonReader = Json.createReader(new StringReader(headerJson));
-        JsonObject jsonObject = jsonReader.readObject();
-        String kid = jsonObject.getString("kid");
-
-        Optional<JWK> optional = jwks.stream().filter(jwk -> jwk.getKid().equals(kid)).findFirst();
-        if (optional.isEmpty()) {
+        String kid = jws.getKid();
+        JWK webKey = jwks.get(kid);
+        if (webKey == null && keys != null) {
+            webKey = keys.find(kid);
+        }
+        if (webKey == null) {
             logger.warning(() -> MessageFormat.format("Missing public key kid={0} in JSON Web Key Set (JWKS)", kid));
-            return false;
+            return null;
         }
 
-        JWK webKey = optional.get();
-
-        // 3. Verify signature
+        // 3. Verify signature, the claims are read once the token is known to be genuine
+        VerifiedJwt verified = null;
         try {
-            Signature sig = Signature.getInstance("SHA256withRSA");
-            sig.initVerify(webKey.getPublicKey());
-            sig.update((header + "." + payload).getBytes(US_ASCII));
-            verified = sig.verify(signature);
+            if (webKey.verifier().verify(jws.bytes(), 0, jws.signingInputLength(), jws.signature())) {
+                verified = VerifiedJwt.of(jws.payload());
+                if (verified == null) {
+                    logger.warning(() -> "Payload is not a JSON object. JWT invalid");
+                    return null;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            logger.warning(() -> "Token is not base64url encoded. JWT invalid");
+            return null;
+        } catch (SignatureException e) {
+            /* a forged or truncated signature, for example of a bearer token */
+            logger.warning(() -> MessageFormat.format("Malformed signature: {0}. JWT invalid", e.getMessage()));
+            return null;
         } catch (GeneralSecurityException e) {
             throw new RuntimeException(e);
         }
 
-        if (!verified) {
+        if (verified != null) {
+            verifiedTokens.put(jwt, kid, verified);
+        } else {
             logger.warning(() -> MessageFormat.format("Signature mismatch. JWT invalid", kid));
         }
 
         return verified;
     }
 
+    /**
+     * Verifies an access token of the user pool, for example a bearer token sent to a resource server. Besides
+     * the signature, the token must not be expired, must be issued by the user pool for this client, and must be
+     * an access token.
+     *
+     * @param jwt a JSON Web Token
+     * @param keys the key set manager
+     * @return the verified token, or null if the token is invalid
+     * @see <a href="https://docs.aws.amazon.com/cognito/latest/developerguide/amazon-cognito-user-pools-using-tokens-verifying-a-jwt.html">Verifying a JSON Web Token</a>
+     */
+    public VerifiedJwt verifyAccessToken(String jwt, JwkSetManager keys) {
+        requireNonNull(keys, "keys");
+        return verifyClaims(verifySignature(jwt, keys.get(), keys), "access");
+    }
+
+    /**
+     * Verifies an access token of the user pool against a key set, see {@link #verifyAccessToken(String, JwkSetManager)}.
+     *
+     * @param jwt a JSON Web Token
+     * @param jwks the key set
+     * @return the verified token, or null if the token is invalid
+     */
+    public VerifiedJwt verifyAccessToken(String jwt, JwkSet jwks) {
+        requireNonNull(jwks, "jwks");
+        return verifyClaims(verifySignature(jwt, jwks, null), "access");
+    }
+
+    /**
+     * Verifies an identity token of the user pool. Besides the signature, the token must not be expired, must be
+     * issued by the user pool, must be an identity token, and its audience must be this client.
+     *
+     * @param jwt a JSON Web Token
+     * @param keys the key set manager
+     * @return the verified token, or null if the token is invalid
+     */
+    public VerifiedJwt verifyIdToken(String jwt, JwkSetManager keys) {
+        requireNonNull(keys, "keys");
+        return verifyClaims(verifySignature(jwt, keys.get(), keys), "id");
+    }
+
+    /**
+     * Verifies an identity token of the user pool against a key set, see {@link #verifyIdToken(String, JwkSetManager)}.
+     *
+     * @param jwt a JSON Web Token
+     * @param jwks the key set
+     * @return the verified token, or null if the token is invalid
+     */
+    public VerifiedJwt verifyIdToken(String jwt, JwkSet jwks) {
+        requireNonNull(jwks, "jwks");
+        return verifyClaims(verifySignature(jwt, jwks, null), "id");
+    }
+
+    /* Checks exp, iss, token_use and client_id of access tokens or aud of identity tokens */
+    private VerifiedJwt verifyClaims(VerifiedJwt verified, String tokenUse) {
+        if (verified == null) {
+            return null;
+        }
+        if (verified.getExp() <= System.currentTimeMillis() / 1000) {
+            logger.fine(() -> "Token expired. JWT invalid");
+            return null;
+        }
+        if (!issuer.equals(verified.getIssuer())) {
+            logger.warning(() -> MessageFormat.format("Unexpected issuer iss={0}. JWT invalid", verified.getIssuer()));
+            return null;
+        }
+        if (!tokenUse.equals(verified.getTokenUse())) {
+            logger.warning(() -> MessageFormat.format("Unexpected token_use={0}. JWT invalid", verified.getTokenUse()));
+            return null;
+        }
+        String audience = "access".equals(tokenUse) ? verified.getClientId() : verified.getAudience();
+        if (!config.getClientId().equals(audience)) {
+            logger.warning(() -> MessageFormat.format("Unexpected audience {0}. JWT invalid", audience));
+            return null;
+        }
+        return verified;
+    }
+
     /**
      * Uses backchannel to aquire new access token from code grant. Requoires a previous user pool token.
      */
     public Either<CognitoError, UserPoolToken> refreshToken(String refreshToken) throws IOException {
+        return await(refreshTokenAsync(refreshToken));
+    }
+
+    /**
+     * Refresh Token Grant without blocking the calling thread.
+     * <p>
+     * The returned future completes exceptionally with an {@code IOException} if an I/O related error has occurred,
+     * including a timeout of the backchannel.
+     * <p>
+     * Concurrent calls with the same refresh token share a single request to the token endpoint, for example
+     * when a browser sends many requests right after the access token has expired. The request is abandoned
+     * once every caller has cancelled its future.
+     *
+     * @param refreshToken the refresh token
+     * @return a future of either a Cognito User Pool Token or an error
+     */
+    public CompletableFuture<Either<CognitoError, UserPoolToken>> refreshTokenAsync(String refreshToken) {
         requireNonNull(refreshToken, "refreshToken");
-        var parameters = new StringJoiner("&")
-                .add(requestParameter("grant_type", "refresh_token"))
-                .add(requestParameter("client_id", config.getClientId()))
-                .add(requestParameter("refresh_token", refreshToken))
-                .toString();
+        while (true) {
+            RefreshGrant created = new RefreshGrant();
+            RefreshGrant grant = refreshGrants.putIfAbsent(refreshToken, created);
+            if (grant == null) {
+                var parameters = new StringJoiner("&")
+                        .add(requestParameter("grant_type", "refresh_token"))
+                        .add(requestParameter("client_id", config.getClientId()))
+                        .add(requestParameter("refresh_token", refreshToken))
+                        .toString();
+                CompletableFuture<Either<CognitoError, UserPoolToken>> caller = created.join();
+                created.start(contactTokenEndpointAsync(parameters), () -> refreshGrants.remove(refreshToken, created));
+                return caller;
+            }
+            CompletableFuture<Either<CognitoError, UserPoolToken>> caller = grant.join();
+            if (caller != null) {
+                return caller;
+            }
+            /* the grant is over, but not yet removed */
+            refreshGrants.remove(refreshToken, grant);
+        }
+    }
 
-        return contactTokenEndpoint(parameters);
+    /**
+     * A refresh token grant in flight, shared by all callers with the same refresh token. Every caller gets
+     * its own future. The request is abandoned once all callers have cancelled theirs.
+     */
+    private static final class RefreshGrant {
+
+        private final CompletableFuture<Either<CognitoError, UserPoolToken>> result = new CompletableFuture<>();
+
+        /* guarded by this */
+        private int callers;
+
+        /* Returns a future for one more caller, or null if the grant is over */
+        synchronized CompletableFuture<Either<CognitoError, UserPoolToken>> join() {
+            if (result.isDone()) {
+                return null;
+            }
+            callers++;
+            CompletableFuture<Either<CognitoError, UserPoolToken>> caller = result.copy();
+            caller.whenComplete((either, throwable) -> {
+                if (caller.isCancelled()) {
+                    leave();
+                }
+            });
+            return caller;
+        }
+
+        private synchronized void leave() {
+            if (--callers == 0) {
+                result.cancel(true);
+            }
+        }
+
+        /* onDone runs before the callers see the result, a later call starts a new grant */
+        void start(CompletableFuture<Either<CognitoError, UserPoolToken>> exchange, Runnable onDone) {
+            result.whenComplete((either, throwable) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+            exchange.whenComplete((either, throwable) -> {
+                onDone.run();
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(either);
+                }
+            });
+        }
     }
 
     String requestParameter(String name, String value) {
@@ -254,37 +547,76 @@ public class CognitoService {
                 .toString();
     }
 
-    Either<CognitoError, UserPoolToken> contactTokenEndpoint(String parameters) throws IOException {
+    CompletableFuture<Either<CognitoError, UserPoolToken>> contactTokenEndpointAsync(String parameters) {
         HttpRequest httpRequest = HttpRequest.newBuilder()
                 .uri(token)
+                .timeout(config.getBackchannelTimeout())
                 .headers("Authorization", authorizationHeaderValue)
                 .headers("Content-Type", "application/x-www-form-urlencoded")
                 .POST(HttpRequest.BodyPublishers.ofString(parameters))
                 .build();
 
-        HttpResponse<InputStream> httpResponse = null;
-        try {
-            httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("an interrupt happened during http");
+        /* The body is read in full, parsing a stream would block a thread of the http client */
+        CompletableFuture<HttpResponse<byte[]>> exchange = httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<Either<CognitoError, UserPoolToken>> result = exchange.thenApply(httpResponse -> {
+            try {
+                return tokenResponse(httpResponse.statusCode(), httpResponse.body());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        /* Cancelling a dependent future does not reach the exchange on its own */
+        result.whenComplete((either, throwable) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    Either<CognitoError, UserPoolToken> tokenResponse(int statusCode, byte[] body) throws IOException {
+        if (statusCode != SC_OK && statusCode != SC_BAD_REQUEST) {
+            throw new IOException(MessageFormat.format("unable to proceed with statusCode={0}", statusCode));
         }
 
-        int statusCode = httpResponse.statusCode();
-        JsonReader jsonReader = Json.createReader(httpResponse.body());
-        JsonObject object = jsonReader.readObject();
+        JsonObject object;
+        try (JsonReader jsonReader = Json.createReader(new ByteArrayInputStream(body))) {
+            object = jsonReader.readObject();
+        } catch (JsonException e) {
+            throw new IOException("malformed response from token endpoint", e);
+        }
 
         if (statusCode == SC_OK) {
             UserPoolToken token = UserPoolToken.from(object);
             return Either.ofRight(token);
-        } else if (statusCode == SC_BAD_REQUEST) {
+        } else {
             String error = object.getString("error");
             CognitoError cognitoError = CognitoError.valueOf(error.toUpperCase());
             return Either.ofLeft(cognitoError);
-        } else {
-            throw new IOException(MessageFormat.format("unable to proceed with statusCode={0}", statusCode));
         }
     }
 
+    /**
+     * Waits for the result of a backchannel request. An interrupt cancels the request.
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("an interrupt happened during http");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 
 }
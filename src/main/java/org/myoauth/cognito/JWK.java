@@ -15,6 +15,7 @@
 
 package org.myoauth.cognito;
 
+import jakarta.json.Json;
 import jakarta.json.JsonObject;
 
 import java.math.BigInteger;
@@ -47,6 +48,10 @@ public final class JWK {
     private final String n;
     /* We assume this is always 'sig' */
     private final String use;
+    /* Decoded lazily from e and n, at most once per instance */
+    private volatile PublicKey publicKey;
+    /* Pool of signature objects initialized with the public key, created lazily */
+    private volatile SignatureVerifier verifier;
 
     public JWK(String kid, String alg, String kty, String e, String n, String use) {
         this.kid = requireNonNull(kid, "kid");
@@ -117,12 +122,45 @@ public final class JWK {
         return use;
     }
 
+    /* True if the other key has the same id and material, so it can stand in for this one */
+    boolean sameKey(JWK other) {
+        return kid.equals(other.kid) && alg.equals(other.alg) && kty.equals(other.kty)
+                && e.equals(other.e) && n.equals(other.n) && use.equals(other.use);
+    }
+
     /**
      * Returns a RSA public key from the fields {@code e} and {@code n}.
+     * <p>
+     * The key is decoded on first access and the same instance is returned afterwards.
      *
      * @return public key
      */
     public PublicKey getPublicKey() {
+        PublicKey key = publicKey;
+        if (key == null) {
+            /* A race decodes the key twice at worst, both results are equal */
+            key = decodePublicKey();
+            publicKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Returns the signature verifier bound to the public key of this JWK.
+     *
+     * @return signature verifier
+     */
+    SignatureVerifier verifier() {
+        SignatureVerifier v = verifier;
+        if (v == null) {
+            /* A race creates a second pool at worst, one of them is kept */
+            v = new SignatureVerifier(getPublicKey());
+            verifier = v;
+        }
+        return v;
+    }
+
+    private PublicKey decodePublicKey() {
         try {
             Base64.Decoder decoder = Base64.getUrlDecoder();
             KeyFactory keyFactory = KeyFactory.getInstance("RSA");
@@ -137,6 +175,22 @@ public final class JWK {
         }
     }
 
+    /**
+     * Returns the JSON representation of this key, the inverse of {@link #from(JsonObject)}.
+     *
+     * @return json object
+     */
+    public JsonObject toJson() {
+        return Json.createObjectBuilder()
+                .add("alg", alg)
+                .add("e", e)
+                .add("kid", kid)
+                .add("kty", kty)
+                .add("n", n)
+                .add("use", use)
+                .build();
+    }
+
     /**
      * Returns an instance from a a {@code JsonObject}.
      *
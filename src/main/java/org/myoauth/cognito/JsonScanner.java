@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads single members of a flat JSON object straight from its UTF-8 bytes.
+ * <p>
+ * This is not a general purpose JSON parser. It is made for the small objects found in the header and payload of a
+ * JSON Web Token: it reads one member by name and skips over everything else without building a tree.
+ * Nested objects and arrays are skipped, but never searched. If a name occurs more than once, the lexically last
+ * member is used as required by JWS.
+ * <p>
+ * All methods return the missing value if the bytes are not a well-formed JSON object.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7515#section-4">JOSE Header</a>
+ */
+final class JsonScanner {
+
+    /* Sentinel for "no value" */
+    private static final int NONE = -1;
+
+    private final byte[] json;
+    private final int end;
+    private int pos;
+
+    private JsonScanner(byte[] json, int off, int len) {
+        this.json = json;
+        this.pos = off;
+        this.end = off + len;
+    }
+
+    /**
+     * Returns the string value of the member {@code name}.
+     *
+     * @return the value, or null if absent, not a string or the object is malformed
+     */
+    static String getString(byte[] json, int off, int len, String name) {
+        JsonScanner scanner = new JsonScanner(json, off, len);
+        int at = scanner.find(name);
+        if (at == NONE || json[at] != '"') {
+            return null;
+        }
+        scanner.pos = at;
+        return scanner.readString();
+    }
+
+    /**
+     * Returns the integral number value of the member {@code name}.
+     *
+     * @return the value, or {@code defaultValue} if absent, not an integral number or the object is malformed
+     */
+    static long getLong(byte[] json, int off, int len, String name, long defaultValue) {
+        JsonScanner scanner = new JsonScanner(json, off, len);
+        int at = scanner.find(name);
+        if (at == NONE) {
+            return defaultValue;
+        }
+        scanner.pos = at;
+        return scanner.readLong(defaultValue);
+    }
+
+    static String getString(byte[] json, String name) {
+        return getString(json, 0, json.length, name);
+    }
+
+    /**
+     * Scans the object once and returns the positions of the values of the members {@code names}, to be read with
+     * {@link #stringAt(byte[], int)} and {@link #longAt(byte[], int, long)}.
+     *
+     * @return the positions, -1 for absent members, or null if the object is malformed
+     */
+    static int[] find(byte[] json, String... names) {
+        int[] found = new int[names.length];
+        return new JsonScanner(json, 0, json.length).find(names, found) ? found : null;
+    }
+
+    /**
+     * Returns the string value at a position returned by {@link #find(byte[], String...)}.
+     *
+     * @return the value, or null if absent or not a string
+     */
+    static String stringAt(byte[] json, int at) {
+        if (at == NONE || json[at] != '"') {
+            return null;
+        }
+        JsonScanner scanner = new JsonScanner(json, at, json.length - at);
+        return scanner.readString();
+    }
+
+    /**
+     * Returns the integral number value at a position returned by {@link #find(byte[], String...)}.
+     *
+     * @return the value, or {@code defaultValue} if absent or not an integral number
+     */
+    static long longAt(byte[] json, int at, long defaultValue) {
+        if (at == NONE) {
+            return defaultValue;
+        }
+        return new JsonScanner(json, at, json.length - at).readLong(defaultValue);
+    }
+
+    static long getLong(byte[] json, String name, long defaultValue) {
+        return getLong(json, 0, json.length, name, defaultValue);
+    }
+
+    /**
+     * Scans the whole object and returns the position of the value of the last member called {@code name}.
+     */
+    private int find(String name) {
+        int[] found = new int[1];
+        return find(new String[] { name }, found) ? found[0] : NONE;
+    }
+
+    /**
+     * Scans the whole object and stores the positions of the values of the last members called {@code names}.
+     *
+     * @return false if the object is malformed
+     */
+    private boolean find(String[] names, int[] found) {
+        Arrays.fill(found, NONE);
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return true;
+        }
+        while (true) {
+            skipWhitespace();
+            if (pos >= end || json[pos] != '"') {
+                return false;
+            }
+            int matches = NONE;
+            for (int i = 0; i < names.length && matches == NONE; i++) {
+                if (nameEquals(names[i])) {
+                    matches = i;
+                }
+            }
+            if (!skipString()) {
+                return false;
+            }
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            int value = pos;
+            if (!skipValue()) {
+                return false;
+            }
+            if (matches != NONE) {
+                found[matches] = value;
+            }
+            skipWhitespace();
+            if (consume(',')) {
+                continue;
+            }
+            if (consume('}')) {
+                return true;
+            }
+            Arrays.fill(found, NONE);
+            return false;
+        }
+    }
+
+    /* Compares the string at pos with name, without moving pos */
+    private boolean nameEquals(String name) {
+        int i = pos + 1;
+        for (int j = 0; j < name.length(); j++, i++) {
+            if (i >= end) {
+                return false;
+            }
+            byte b = json[i];
+            if (b == '\\') {
+                /* Escaped names are rare, take the slow path */
+                int saved = pos;
+                String decoded = readString();
+                pos = saved;
+                return name.equals(decoded);
+            }
+            if (b != name.charAt(j)) {
+                return false;
+            }
+        }
+        return i < end && json[i] == '"';
+    }
+
+    private String readString() {
+        int start = pos + 1;
+        int i = start;
+        while (i < end && json[i] != '"' && json[i] != '\\') {
+            i++;
+        }
+        if (i < end && json[i] == '"') {
+            pos = i + 1;
+            return new String(json, start, i - start, UTF_8);
+        }
+        StringBuilder sb = new StringBuilder(new String(json, start, i - start, UTF_8));
+        while (i < end) {
+            byte b = json[i];
+            if (b == '"') {
+                pos = i + 1;
+                return sb.toString();
+            }
+            if (b != '\\') {
+                int run = i;
+                while (i < end && json[i] != '"' && json[i] != '\\') {
+                    i++;
+                }
+                sb.append(new String(json, run, i - run, UTF_8));
+                continue;
+            }
+            if (i + 1 >= end) {
+                return null;
+            }
+            byte escaped = json[i + 1];
+            switch (escaped) {
+                case '"': case '\\': case '/': sb.append((char) escaped); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (i + 6 > end) {
+                        return null;
+                    }
+                    int c = 0;
+                    for (int k = i + 2; k < i + 6; k++) {
+                        int digit = Character.digit(json[k], 16);
+                        if (digit < 0) {
+                            return null;
+                        }
+                        c = (c << 4) | digit;
+                    }
+                    sb.append((char) c);
+                    i += 4;
+                    break;
+                default:
+                    return null;
+            }
+            i += 2;
+        }
+        return null;
+    }
+
+    private long readLong(long defaultValue) {
+        boolean negative = consume('-');
+        int start = pos;
+        long value = 0;
+        while (pos < end && json[pos] >= '0' && json[pos] <= '9') {
+            if (value > (Long.MAX_VALUE - 9) / 10) {
+                return defaultValue;
+            }
+            value = value * 10 + (json[pos++] - '0');
+        }
+        if (pos == start || (pos < end && (json[pos] == '.' || json[pos] == 'e' || json[pos] == 'E'))) {
+            return defaultValue;
+        }
+        return negative ? -value : value;
+    }
+
+    private boolean skipValue() {
+        if (pos >= end) {
+            return false;
+        }
+        byte b = json[pos];
+        if (b == '"') {
+            return skipString();
+        }
+        if (b == '{' || b == '[') {
+            return skipNested();
+        }
+        /* numbers and the literals true, false and null */
+        int start = pos;
+        while (pos < end) {
+            b = json[pos];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private boolean skipNested() {
+        int depth = 0;
+        while (pos < end) {
+            byte b = json[pos];
+            if (b == '"') {
+                if (!skipString()) {
+                    return false;
+                }
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    pos++;
+                    return true;
+                }
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    private boolean skipString() {
+        int i = pos + 1;
+        while (i < end) {
+            byte b = json[i];
+            if (b == '\\') {
+                i += 2;
+            } else if (b == '"') {
+                pos = i + 1;
+                return true;
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = json[pos];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean consume(char c) {
+        if (pos < end && json[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A JSON Web Key Set (JWKS) indexed by key id.
+ * <p>
+ * Looking up a key by its {@code kid} takes constant time. The set keeps the order of the keys it was created from.
+ * Of several keys with the same {@code kid} only the first is kept.
+ * <p>
+ * Instances of this class are immutable and thread-safe.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7517#section-5">JWK Set Format</a>
+ */
+public final class JwkSet implements Iterable<JWK> {
+
+    private static final JwkSet EMPTY = new JwkSet(List.of());
+
+    private final List<JWK> keys;
+    private final Map<String, JWK> index;
+
+    private JwkSet(List<JWK> keys) {
+        this.index = new HashMap<>((int) (keys.size() / 0.75f) + 1);
+        List<JWK> unique = new ArrayList<>(keys.size());
+        for (JWK jwk : keys) {
+            if (index.putIfAbsent(jwk.getKid(), jwk) == null) {
+                unique.add(jwk);
+            } else {
+                Logger.getLogger(getClass().getPackageName()).warning(() -> "duplicate kid=" + jwk.getKid() + " ignored, keeping the first key");
+            }
+        }
+        this.keys = unique.size() == keys.size() ? keys : Collections.unmodifiableList(unique);
+    }
+
+    /**
+     * Returns the key with the given key id.
+     *
+     * @param kid a key id, can be null
+     * @return the matching key or null if this set does not contain the key id
+     */
+    public JWK get(String kid) {
+        if (kid == null) {
+            return null;
+        }
+        return index.get(kid);
+    }
+
+    /**
+     * Returns true if this set contains a key with the given key id.
+     *
+     * @param kid a key id, can be null
+     * @return true if a matching key is present
+     */
+    public boolean contains(String kid) {
+        return get(kid) != null;
+    }
+
+    /**
+     * Returns all keys of this set.
+     *
+     * @return an unmodifiable list of keys, not null
+     */
+    public List<JWK> keys() {
+        return keys;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    @Override
+    public Iterator<JWK> iterator() {
+        return keys.iterator();
+    }
+
+    /**
+     * Returns the JSON representation of this key set, the inverse of {@link #from(JsonObject)}.
+     *
+     * @return json object with a {@code keys} member
+     */
+    public JsonObject toJson() {
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (JWK jwk : keys) {
+            array.add(jwk.toJson());
+        }
+        return Json.createObjectBuilder().add("keys", array).build();
+    }
+
+    /**
+     * Returns an empty key set.
+     *
+     * @return empty key set
+     */
+    public static JwkSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a key set of the given keys.
+     *
+     * @param keys a collection of keys, not null
+     * @return a key set
+     */
+    public static JwkSet of(Collection<JWK> keys) {
+        requireNonNull(keys, "keys");
+        return new JwkSet(List.copyOf(keys));
+    }
+
+    /**
+     * Returns an instance from a {@code JsonObject} with a {@code keys} member, as served by Amazon Cognito.
+     *
+     * @param jsonObject json object
+     * @return a key set
+     */
+    public static JwkSet from(JsonObject jsonObject) {
+        JsonArray jsonArray = jsonObject.getJsonArray("keys");
+        List<JWK> keys = new ArrayList<>(jsonArray.size());
+        for (int i = 0; i < jsonArray.size(); i++) {
+            keys.add(JWK.from(jsonArray.getJsonObject(i)));
+        }
+        return new JwkSet(Collections.unmodifiableList(keys));
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the JSON Web Key Set of a user pool up to date.
+ * <p>
+ * The key set is reloaded in the background on a fixed schedule. In addition, a token signed with an unknown key id
+ * triggers a reload, because Amazon Cognito may have rotated its keys. Only one reload runs at a time: all threads
+ * that ask for a reload while one is in flight wait for the same result. Reloads are at least
+ * {@code minimumRefreshInterval} apart, so a flood of tokens with made-up key ids does not turn into a flood of
+ * requests to Amazon Cognito.
+ * <p>
+ * If a reload fails or returns no keys, the previous key set stays in use. Keys whose id and material did not change
+ * are carried over, so their decoded public key and pooled signatures survive the reload. If a snapshot file is configured, every successfully
+ * reloaded key set is written to it, see {@link JwkSetSnapshot}.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+public final class JwkSetManager implements AutoCloseable {
+
+    private final Logger logger = Logger.getLogger(getClass().getPackageName());
+
+    /* How long a thread waits for a reload triggered by an unknown key id */
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(10);
+
+    private final CognitoService cognito;
+    private final Duration refreshInterval;
+    private final long minimumRefreshIntervalNanos;
+    private final ScheduledExecutorService executor;
+    private final Path snapshot;
+
+    private volatile JwkSet jwks;
+    /* nanoTime of the start of the last reload */
+    private volatile long lastFetch;
+    private volatile boolean fetched;
+    private final AtomicReference<CompletableFuture<JwkSet>> inflight = new AtomicReference<>();
+
+    /**
+     * Creates a new manager. Call {@link #start()} to schedule periodic reloads.
+     *
+     * @param cognito the service to load the key set with
+     * @param jwks the initial key set, can be empty
+     * @param refreshInterval the time between two scheduled reloads
+     * @param minimumRefreshInterval the minimum time between two reloads
+     */
+    public JwkSetManager(CognitoService cognito, JwkSet jwks, Duration refreshInterval, Duration minimumRefreshInterval) {
+        this(cognito, jwks, refreshInterval, minimumRefreshInterval, null);
+    }
+
+    /**
+     * Creates a new manager that writes every reloaded key set to a snapshot file.
+     *
+     * @param cognito the service to load the key set with
+     * @param jwks the initial key set, can be empty
+     * @param refreshInterval the time between two scheduled reloads
+     * @param minimumRefreshInterval the minimum time between two reloads
+     * @param snapshot the snapshot file, can be null
+     */
+    public JwkSetManager(CognitoService cognito, JwkSet jwks, Duration refreshInterval, Duration minimumRefreshInterval, Path snapshot) {
+        this.cognito = requireNonNull(cognito, "cognito");
+        this.snapshot = snapshot;
+        this.jwks = requireNonNull(jwks, "jwks");
+        this.refreshInterval = requireNonNull(refreshInterval, "refreshInterval");
+        this.minimumRefreshIntervalNanos = minimumRefreshInterval.toNanos();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "myoauth-jwks");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules periodic reloads of the key set.
+     */
+    public void start() {
+        long period = refreshInterval.toMillis();
+        executor.scheduleWithFixedDelay(this::refresh, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the current key set.
+     *
+     * @return key set, not null
+     */
+    public JwkSet get() {
+        return jwks;
+    }
+
+    /**
+     * Returns the key with the given key id. If the current key set does not contain the key, this method reloads
+     * the key set and waits for the result, unless the last reload is too recent.
+     *
+     * @param kid a key id, can be null
+     * @return the key or null if it is unknown
+     */
+    public JWK find(String kid) {
+        JWK jwk = jwks.get(kid);
+        if (jwk != null || kid == null) {
+            return jwk;
+        }
+        try {
+            return refresh().get(FETCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).get(kid);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return jwks.get(kid);
+        }
+    }
+
+    /**
+     * Reloads the key set unless a reload is in flight or the last one is too recent.
+     *
+     * @return a future of the key set after the reload, never fails
+     */
+    public CompletableFuture<JwkSet> refresh() {
+        CompletableFuture<JwkSet> current = inflight.get();
+        if (current != null) {
+            return current;
+        }
+        if (fetched && System.nanoTime() - lastFetch < minimumRefreshIntervalNanos) {
+            return CompletableFuture.completedFuture(jwks);
+        }
+        CompletableFuture<JwkSet> future = new CompletableFuture<>();
+        if (!inflight.compareAndSet(null, future)) {
+            current = inflight.get();
+            return current != null ? current : CompletableFuture.completedFuture(jwks);
+        }
+        lastFetch = System.nanoTime();
+        fetched = true;
+        try {
+            executor.execute(() -> fetch(future));
+        } catch (RejectedExecutionException e) {
+            /* closed */
+            inflight.set(null);
+            future.complete(jwks);
+        }
+        return future;
+    }
+
+    private void fetch(CompletableFuture<JwkSet> future) {
+        try {
+            JwkSet loaded = cognito.jwkSet();
+            if (loaded.isEmpty()) {
+                logger.warning("reloaded JSON Web Key Set is empty, keeping the previous one");
+                return;
+            }
+            jwks = reuse(jwks, loaded);
+            logger.fine(() -> MessageFormat.format("JSON Web Key Set reloaded, size={0}", loaded.size()));
+            if (snapshot != null) {
+                writeSnapshot(loaded);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "unable to reload JSON Web Key Set, keeping the previous one", e);
+        } finally {
+            inflight.set(null);
+            future.complete(jwks);
+        }
+    }
+
+    /* Keeps the instances of unchanged keys, with their decoded public key and pool of signatures */
+    private static JwkSet reuse(JwkSet previous, JwkSet loaded) {
+        List<JWK> keys = new ArrayList<>(loaded.size());
+        int reused = 0;
+        for (JWK jwk : loaded) {
+            JWK known = previous.get(jwk.getKid());
+            if (known != null && known.sameKey(jwk)) {
+                keys.add(known);
+                reused++;
+            } else {
+                keys.add(jwk);
+            }
+        }
+        if (reused == previous.size() && reused == loaded.size()) {
+            return previous;
+        }
+        return JwkSet.of(keys);
+    }
+
+    private void writeSnapshot(JwkSet loaded) {
+        try {
+            JwkSetSnapshot.write(snapshot, loaded);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "unable to write JSON Web Key Set snapshot " + snapshot, e);
+        }
+    }
+
+    /**
+     * Stops the periodic reloads.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
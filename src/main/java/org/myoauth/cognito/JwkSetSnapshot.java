@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Reads and writes a copy of the JSON Web Key Set on local disk.
+ * <p>
+ * A snapshot lets the filter start without waiting for Amazon Cognito. The keys of a user pool are public and
+ * rotate rarely, so a snapshot from the previous run is almost always current. It is refreshed in the background
+ * anyway.
+ * <p>
+ * Snapshots are written to a temporary file first and then moved into place, so a reader never sees a partial file.
+ */
+public final class JwkSetSnapshot {
+
+    private JwkSetSnapshot() { }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param path the snapshot file
+     * @return the key set
+     * @throws IOException if the file cannot be read or does not contain a key set
+     */
+    public static JwkSet read(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path);
+             JsonReader jsonReader = Json.createReader(inputStream)) {
+            return JwkSet.from(jsonReader.readObject());
+        } catch (JsonException | ClassCastException | NullPointerException e) {
+            throw new IOException("malformed JSON Web Key Set snapshot " + path, e);
+        }
+    }
+
+    /**
+     * Atomically replaces the snapshot with the given key set.
+     *
+     * @param path the snapshot file
+     * @param jwks the key set
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, JwkSet jwks) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path directory = absolute.getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, absolute.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temporary);
+                 JsonWriter jsonWriter = Json.createWriter(outputStream)) {
+                jsonWriter.writeObject(jwks.toJson());
+            }
+            try {
+                Files.move(temporary, absolute, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, absolute, REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.myoauth.Cryptoblock;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A JSON Web Token in JWS compact serialization, split into its three parts.
+ * <p>
+ * The token is converted to bytes once. The parts are located by the positions of the two dots, so the signing input
+ * is a prefix of the token bytes and never copied. Only the JOSE header is decoded up front, the payload and the
+ * signature are decoded on demand.
+ * <p>
+ * Instances of this class are not thread-safe.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7515#section-7.1">JWS Compact Serialization</a>
+ */
+final class Jws {
+
+    private static final Cryptoblock cryptoblock = Cryptoblock.getInstance();
+
+    private final byte[] token;
+    /* Position of the first and the second dot */
+    private final int headerEnd;
+    private final int payloadEnd;
+    private final String kid;
+    private final String alg;
+
+    private Jws(byte[] token, int headerEnd, int payloadEnd, String kid, String alg) {
+        this.token = token;
+        this.headerEnd = headerEnd;
+        this.payloadEnd = payloadEnd;
+        this.kid = kid;
+        this.alg = alg;
+    }
+
+    /**
+     * Returns the key id from the JOSE header.
+     *
+     * @return key id, can be null
+     */
+    String getKid() {
+        return kid;
+    }
+
+    /**
+     * Returns the algorithm from the JOSE header.
+     *
+     * @return algorithm, can be null
+     */
+    String getAlg() {
+        return alg;
+    }
+
+    /**
+     * Returns the token bytes. The first {@link #signingInputLength()} bytes are the JWS signing input.
+     */
+    byte[] bytes() {
+        return token;
+    }
+
+    /**
+     * Returns the length of the signing input, that is the encoded header, a dot and the encoded payload.
+     */
+    int signingInputLength() {
+        return payloadEnd;
+    }
+
+    /**
+     * Decodes the payload.
+     *
+     * @return the payload, usually UTF-8 encoded JSON
+     * @throws IllegalArgumentException if the payload is not valid base64url
+     */
+    byte[] payload() {
+        return cryptoblock.base64UrlDecode(token, headerEnd + 1, payloadEnd - headerEnd - 1);
+    }
+
+    /**
+     * Decodes the signature.
+     *
+     * @return the signature
+     * @throws IllegalArgumentException if the signature is not valid base64url
+     */
+    byte[] signature() {
+        return cryptoblock.base64UrlDecode(token, payloadEnd + 1, token.length - payloadEnd - 1);
+    }
+
+    /**
+     * Splits a JSON Web Token and reads its header.
+     *
+     * @param jwt a token in compact serialization
+     * @return the parsed token or null if {@code jwt} is not a JWS with a JSON object as header
+     */
+    static Jws parse(String jwt) {
+        int headerEnd = jwt.indexOf('.');
+        if (headerEnd <= 0) {
+            return null;
+        }
+        int payloadEnd = jwt.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || jwt.indexOf('.', payloadEnd + 1) >= 0) {
+            return null;
+        }
+        byte[] token = jwt.getBytes(US_ASCII);
+        byte[] header;
+        try {
+            header = cryptoblock.base64UrlDecode(token, 0, headerEnd);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String kid = JsonScanner.getString(header, "kid");
+        String alg = JsonScanner.getString(header, "alg");
+        return new Jws(token, headerEnd, payloadEnd, kid, alg);
+    }
+
+}
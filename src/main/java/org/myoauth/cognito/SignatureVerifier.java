@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Verifies RSASSA-PKCS1-v1_5 SHA-256 signatures with a single public key.
+ * <p>
+ * {@code Signature} objects are expensive to look up and not thread-safe. This class keeps a bounded pool of
+ * instances that are already initialized with the public key. A thread borrows an instance for a single
+ * verification and returns it afterwards. Since the key of a pooled instance never changes, it is never
+ * initialized twice. The pool does not depend on thread identity and works for platform and virtual threads alike.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+final class SignatureVerifier {
+
+    static final String ALGORITHM = "SHA256withRSA";
+
+    private static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final PublicKey publicKey;
+    private final ConcurrentLinkedQueue<Signature> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    SignatureVerifier(PublicKey publicKey) {
+        this.publicKey = requireNonNull(publicKey, "publicKey");
+    }
+
+    /**
+     * Returns true if {@code signature} is a valid signature of the {@code len} bytes at offset {@code off}.
+     *
+     * @param data the signed data
+     * @param off the offset of the signed data
+     * @param len the length of the signed data
+     * @param signature the signature
+     * @return true if the signature is valid
+     * @throws GeneralSecurityException if the signature cannot be processed
+     */
+    boolean verify(byte[] data, int off, int len, byte[] signature) throws GeneralSecurityException {
+        Signature sig = borrow();
+        /* verify() resets the instance to the state after initVerify(), an exception leaves it undefined */
+        sig.update(data, off, len);
+        boolean verified = sig.verify(signature);
+        release(sig);
+        return verified;
+    }
+
+    int idle() {
+        return idleCount.get();
+    }
+
+    private Signature borrow() throws GeneralSecurityException {
+        Signature sig = idle.poll();
+        if (sig != null) {
+            idleCount.decrementAndGet();
+            return sig;
+        }
+        sig = Signature.getInstance(ALGORITHM);
+        sig.initVerify(publicKey);
+        return sig;
+    }
+
+    private void release(Signature sig) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE) {
+            idle.offer(sig);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+}
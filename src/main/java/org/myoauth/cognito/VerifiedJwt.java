@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A JSON Web Token whose signature has been verified, with its claims.
+ * <p>
+ * The claims that verification needs, {@code sub}, {@code iss}, {@code exp}, {@code token_use}, {@code client_id}
+ * and {@code aud}, are read in a single pass over the decoded payload. Other claims are read from the payload when
+ * they are first asked for, and then remembered. Verified tokens are kept in the {@link VerifiedTokenCache}, so the
+ * payload of a token is decoded once and not on every request.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+public final class VerifiedJwt {
+
+    private static final String[] REQUIRED = { "sub", "iss", "exp", "token_use", "client_id", "aud" };
+
+    /* Marks claims that are absent or neither a string nor an integral number */
+    private static final Object NONE = new Object();
+
+    private final byte[] payload;
+
+    private final String subject;
+    private final String issuer;
+    private final long exp;
+    private final String tokenUse;
+    private final String clientId;
+    private final String audience;
+
+    /* Other claims by name, created on first use */
+    private volatile ConcurrentHashMap<String, Object> claims;
+
+    private VerifiedJwt(byte[] payload, String subject, String issuer, long exp, String tokenUse, String clientId, String audience) {
+        this.payload = payload;
+        this.subject = subject;
+        this.issuer = issuer;
+        this.exp = exp;
+        this.tokenUse = tokenUse;
+        this.clientId = clientId;
+        this.audience = audience;
+    }
+
+    /**
+     * Reads the claims verification needs from the decoded payload.
+     *
+     * @param payload the decoded payload, not copied
+     * @return the token, or null if the payload is not a JSON object
+     */
+    static VerifiedJwt of(byte[] payload) {
+        int[] at = JsonScanner.find(payload, REQUIRED);
+        if (at == null) {
+            return null;
+        }
+        return new VerifiedJwt(payload,
+                JsonScanner.stringAt(payload, at[0]),
+                JsonScanner.stringAt(payload, at[1]),
+                JsonScanner.longAt(payload, at[2], 0),
+                JsonScanner.stringAt(payload, at[3]),
+                JsonScanner.stringAt(payload, at[4]),
+                JsonScanner.stringAt(payload, at[5]));
+    }
+
+    /**
+     * Returns the {@code sub} claim, the unique identifier of the user.
+     *
+     * @return the subject, can be null
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * Returns the {@code token_use} claim, {@code access} or {@code id} for Amazon Cognito.
+     *
+     * @return the token use, can be null
+     */
+    public String getTokenUse() {
+        return tokenUse;
+    }
+
+    /**
+     * Returns the {@code client_id} claim of an access token.
+     *
+     * @return the client id, can be null
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Returns the {@code aud} claim of an identity token, if it is a single string.
+     *
+     * @return the audience, can be null
+     */
+    public String getAudience() {
+        return audience;
+    }
+
+    /**
+     * Returns the {@code exp} claim in seconds since the epoch.
+     *
+     * @return the expiration time, zero if absent
+     */
+    public long getExp() {
+        return exp;
+    }
+
+    public Instant getExpiration() {
+        return Instant.ofEpochSecond(exp);
+    }
+
+    public String getUsername() {
+        return getString("username");
+    }
+
+    /**
+     * Returns the {@code scope} claim of an access token, the scopes separated by spaces.
+     *
+     * @return the scope, can be null
+     */
+    public String getScope() {
+        return getString("scope");
+    }
+
+    /**
+     * Returns a claim with a string value, for example {@code email} or {@code cognito:username}.
+     *
+     * @param name the name of the claim
+     * @return the value, or null if absent or not a string
+     */
+    public String getString(String name) {
+        Object value = claim(name);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Returns a claim with an integral number value, for example {@code auth_time}.
+     *
+     * @param name the name of the claim
+     * @param defaultValue returned if the claim is absent or not an integral number
+     * @return the value
+     */
+    public long getLong(String name, long defaultValue) {
+        Object value = claim(name);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    private Object claim(String name) {
+        ConcurrentHashMap<String, Object> claims = this.claims;
+        if (claims == null) {
+            synchronized (this) {
+                claims = this.claims;
+                if (claims == null) {
+                    this.claims = claims = new ConcurrentHashMap<>(4);
+                }
+            }
+        }
+        return claims.computeIfAbsent(name, this::read);
+    }
+
+    private Object read(String name) {
+        int at = JsonScanner.find(payload, name)[0];
+        if (at < 0) {
+            return NONE;
+        }
+        String string = JsonScanner.stringAt(payload, at);
+        if (string != null) {
+            return string;
+        }
+        long number = JsonScanner.longAt(payload, at, Long.MIN_VALUE);
+        return number != Long.MIN_VALUE ? (Object) number : NONE;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.myoauth.Digests;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A bounded cache of JSON Web Tokens whose signature has already been verified.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the token, the token itself is not kept, but its claims are. An entry lives until the
+ * {@code exp} claim of its token. It also records the key id, so a token is no longer found once its key has
+ * left the key set. When the cache is full, expired entries are removed first and arbitrary entries after that,
+ * until a tenth of the cache is free.
+ * <p>
+ * The cache is backed by a {@code ConcurrentHashMap}, readers never block. A maximum size of zero disables the cache.
+ * <p>
+ * Instances of this class are thread-safe.
+ */
+public final class VerifiedTokenCache {
+
+    private final int maximumSize;
+    private final Clock clock;
+    private final ConcurrentHashMap<Key, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maximumSize the maximum number of entries, zero disables the cache
+     */
+    public VerifiedTokenCache(int maximumSize) {
+        this(maximumSize, Clock.systemUTC());
+    }
+
+    VerifiedTokenCache(int maximumSize, Clock clock) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize");
+        }
+        this.maximumSize = maximumSize;
+        this.clock = clock;
+        this.entries = new ConcurrentHashMap<>(Math.min(maximumSize, 1024));
+    }
+
+    /**
+     * Returns the claims of a token that has been verified before, is not expired and was signed with a key of the
+     * key set.
+     *
+     * @param jwt a JSON Web Token
+     * @param jwks the current key set
+     * @return the verified token, or null on a cache miss
+     */
+    public VerifiedJwt get(String jwt, JwkSet jwks) {
+        Entry entry = lookup(jwt, jwks);
+        return entry != null ? entry.verified : null;
+    }
+
+    private Entry lookup(String jwt, JwkSet jwks) {
+        if (maximumSize == 0) {
+            return null;
+        }
+        Key key = Key.of(jwt);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.exp <= now()) {
+            entries.remove(key, entry);
+            misses.increment();
+            return null;
+        }
+        if (!jwks.contains(entry.kid)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * Adds a verified token with its claims. Tokens that are already expired are ignored.
+     *
+     * @param jwt a JSON Web Token with a valid signature
+     * @param kid the key id of the key that signed the token
+     * @param verified the claims of the token
+     */
+    public void put(String jwt, String kid, VerifiedJwt verified) {
+        long exp = verified.getExp();
+        if (maximumSize == 0 || exp <= now()) {
+            return;
+        }
+        if (entries.size() >= maximumSize) {
+            evict();
+        }
+        entries.put(Key.of(jwt), new Entry(kid, exp, verified));
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /*
+     * Makes room for a tenth of the maximum size at once, so the scan over all entries runs once per that many
+     * insertions. Only one thread evicts, the others insert meanwhile and may exceed the maximum size by a few.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int target = maximumSize - Math.max(1, maximumSize / 10);
+            long now = now();
+            entries.values().removeIf(entry -> entry.exp <= now);
+            Iterator<Key> iterator = entries.keySet().iterator();
+            while (entries.size() > target && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private long now() {
+        return clock.millis() / 1000;
+    }
+
+    private static final class Entry {
+        final String kid;
+        final long exp;
+        final VerifiedJwt verified;
+
+        Entry(String kid, long exp, VerifiedJwt verified) {
+            this.kid = kid;
+            this.exp = exp;
+            this.verified = verified;
+        }
+    }
+
+    /* The SHA-256 digest of a token as four longs */
+    private static final class Key {
+        private final long a, b, c, d;
+
+        private Key(long a, long b, long c, long d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+
+        static Key of(String jwt) {
+            ByteBuffer digest = ByteBuffer.wrap(Digests.sha256(jwt.getBytes(US_ASCII)));
+            return new Key(digest.getLong(), digest.getLong(), digest.getLong(), digest.getLong());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return a == key.a && b == key.b && c == key.c && d == key.d;
+        }
+
+        @Override
+        public int hashCode() {
+            /* The digest is uniformly distributed already */
+            return (int) a;
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Code verifiers from one bulk draw of random bytes versus one random number per symbol.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.myoauth.CodeVerifierBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeVerifierBenchmark {
+
+    private static final char[] SYMBOLS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~".toCharArray();
+
+    private Cryptoblock cryptoblock;
+    private SecureRandom secureRandom;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        cryptoblock = new Cryptoblock("NativePRNGNonBlocking");
+        secureRandom = SecureRandom.getInstance("NativePRNGNonBlocking");
+    }
+
+    @Benchmark
+    public String bulk() {
+        return cryptoblock.codeVerifier();
+    }
+
+    @Benchmark
+    public String perSymbol() {
+        StringBuilder sb = new StringBuilder(Cryptoblock.CODE_VERIFIER_LENGTH);
+        for (int i = 0; i < Cryptoblock.CODE_VERIFIER_LENGTH; i++) {
+            sb.append(SYMBOLS[secureRandom.nextInt(SYMBOLS.length)]);
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CodeVerifierBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -16,6 +16,12 @@
 package org.myoauth;
 
 import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.BiPredicate;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -46,12 +52,143 @@ class CryptoblockTest {
         assertFalse(cryptoblock.areNotEqual("something", "something"));
     }
 
+    @Test
+    public void areEqualCharSequences() {
+        assertTrue(cryptoblock.areEqual(new StringBuilder("something"), "something"));
+        assertFalse(cryptoblock.areEqual(new StringBuilder("something"), "somethinG"));
+        assertFalse(cryptoblock.areEqual("some", "something"));
+        assertFalse(cryptoblock.areEqual("something", "some"));
+        assertFalse(cryptoblock.areEqual("aaaa", "a"));
+        assertFalse(cryptoblock.areEqual("a", ""));
+        assertFalse(cryptoblock.areEqual("", "a"));
+        assertTrue(cryptoblock.areEqual("", ""));
+        assertFalse(cryptoblock.areEqual((CharSequence) null, ""));
+        assertTrue(cryptoblock.areNotEqual(new StringBuilder("ä"), "a"));
+    }
+
+    @Test
+    public void areEqualByteRanges() {
+        byte[] a = "xxsomethingxx".getBytes(US_ASCII);
+        byte[] b = "something".getBytes(US_ASCII);
+        assertTrue(cryptoblock.areEqual(a, 2, 9, b, 0, 9));
+        assertFalse(cryptoblock.areEqual(a, 2, 8, b, 0, 9));
+        assertFalse(cryptoblock.areEqual(a, 1, 9, b, 0, 9));
+        assertTrue(cryptoblock.areEqual(a, 0, 0, b, 9, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> cryptoblock.areEqual(a, 8, 9, b, 0, 9));
+    }
+
+    @Test
+    public void comparisonTimeDoesNotDependOnFirstMismatch() {
+        /* A leak shows up in every measurement, noise from a busy machine rarely does three times */
+        double ratio = 0;
+        for (int attempt = 0; attempt < 3 && !(ratio > 0.5 && ratio < 2.0); attempt++) {
+            ratio = mismatchTimingRatio(cryptoblock::areEqual);
+        }
+        assertThat(ratio, is(both(greaterThan(0.5)).and(lessThan(2.0))));
+    }
+
+    @Test
+    public void timingHarnessDetectsEarlyReturn() {
+        double ratio = mismatchTimingRatio(String::equals);
+        assertThat(ratio, is(greaterThan(2.0)));
+    }
+
+    /*
+     * Compares a long secret with a candidate that differs in its first char and with one that differs in its
+     * last char. The batches are interleaved so that JIT and frequency changes hit both alike. Returns the ratio
+     * of the median batch times, last over first, which is about 1 for constant time and large for an early return.
+     */
+    private static double mismatchTimingRatio(BiPredicate<String, String> equals) {
+        char[] chars = new char[16384];
+        Arrays.fill(chars, 'a');
+        String secret = new String(chars);
+        chars[0] = 'b';
+        String first = new String(chars);
+        chars[0] = 'a';
+        chars[chars.length - 1] = 'b';
+        String last = new String(chars);
+
+        int batches = 101;
+        int calls = 50;
+        long[] firstTimes = new long[batches];
+        long[] lastTimes = new long[batches];
+        boolean sink = false;
+        for (int round = -20; round < batches; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                sink ^= equals.test(first, secret);
+            }
+            long middle = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                sink ^= equals.test(last, secret);
+            }
+            long end = System.nanoTime();
+            if (round >= 0) {
+                firstTimes[round] = middle - start;
+                lastTimes[round] = end - middle;
+            }
+        }
+        assertFalse(sink);
+        Arrays.sort(firstTimes);
+        Arrays.sort(lastTimes);
+        return (double) Math.max(1, lastTimes[batches / 2]) / Math.max(1, firstTimes[batches / 2]);
+    }
+
     @Test
     public void randomString() {
         cryptoblock.random(16);
 
     }
 
+    @Test
+    public void codeVerifier() {
+        String verifier = cryptoblock.codeVerifier();
+        assertThat(verifier.length(), is(Cryptoblock.CODE_VERIFIER_LENGTH));
+        assertTrue(verifier.matches("[A-Za-z0-9._~-]+"), verifier);
+        assertThat(cryptoblock.codeVerifier(), is(not(verifier)));
+    }
+
+    @Test
+    public void codeVerifierSymbolsAreUniform() {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~";
+        long[] counts = new long[alphabet.length()];
+        int verifiers = 4000;
+        for (int i = 0; i < verifiers; i++) {
+            for (char c : cryptoblock.codeVerifier().toCharArray()) {
+                counts[alphabet.indexOf(c)]++;
+            }
+        }
+
+        double expected = (double) verifiers * Cryptoblock.CODE_VERIFIER_LENGTH / alphabet.length();
+        double chiSquare = 0;
+        for (long count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        /* 65 degrees of freedom, 120 is exceeded with a probability below 0.01 %. A modulo bias would be in the thousands. */
+        assertThat(chiSquare, is(lessThan(120.0)));
+    }
+
+    @Test
+    public void secureRandomStrategies() {
+        assertThat(Cryptoblock.getStrongInstance(), is(not(sameInstance(cryptoblock))));
+        assertThat(Cryptoblock.getStrongInstance(), is(sameInstance(Cryptoblock.getStrongInstance())));
+
+        Cryptoblock drbg = new Cryptoblock("DRBG");
+        assertThat(drbg.codeVerifier().length(), is(Cryptoblock.CODE_VERIFIER_LENGTH));
+        assertThat(drbg.random(64), is(not(drbg.random(64))));
+
+        assertThrows(RuntimeException.class, () -> new Cryptoblock("NoSuchRandom"));
+    }
+
+    @Test
+    public void nextBytes() {
+        byte[] a = new byte[16];
+        byte[] b = new byte[16];
+        cryptoblock.nextBytes(a);
+        cryptoblock.nextBytes(b);
+        assertThat(a, is(not(b)));
+    }
+
     @Test
     public void randomStringThrowsIllegalArgumentException() {
         assertThrows(IllegalArgumentException.class, () -> cryptoblock.random(-1));
@@ -79,6 +216,32 @@ class CryptoblockTest {
         assertThat(decoded, is(new byte[] { 0x61, 0x73, 0x64, 0x66 }));
     }
 
+    @Test
+    public void base64UrlDecodeRange() {
+        byte[] src = "xx.YXNkZg.yy".getBytes(US_ASCII);
+        assertThat(cryptoblock.base64UrlDecode(src, 3, 6), is(new byte[] { 0x61, 0x73, 0x64, 0x66 }));
+        assertThat(cryptoblock.base64UrlDecode(src, 3, 0), is(new byte[] {}));
+
+        byte[] random = new byte[257];
+        new Random(42).nextBytes(random);
+        for (int len = 0; len < random.length; len++) {
+            byte[] expected = Arrays.copyOf(random, len);
+            byte[] encoded = cryptoblock.base64UrlEncode(expected).getBytes(US_ASCII);
+            assertThat(cryptoblock.base64UrlDecode(encoded, 0, encoded.length), is(expected));
+        }
+
+        byte[] padded = "YXNkZg==".getBytes(US_ASCII);
+        assertThat(cryptoblock.base64UrlDecode(padded, 0, padded.length), is(new byte[] { 0x61, 0x73, 0x64, 0x66 }));
+    }
+
+    @Test
+    public void base64UrlDecodeRangeThrowsIllegalArgumentException() {
+        byte[] src = "YX+kZg".getBytes(US_ASCII);
+        assertThrows(IllegalArgumentException.class, () -> cryptoblock.base64UrlDecode(src, 0, src.length));
+        byte[] truncated = "YXNkZ".getBytes(US_ASCII);
+        assertThrows(IllegalArgumentException.class, () -> cryptoblock.base64UrlDecode(truncated, 0, truncated.length));
+    }
+
 
 
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DigestsTest {
+
+    @Test
+    void sha256() {
+        byte[] hash = Digests.sha256("abc".getBytes(US_ASCII));
+        assertThat(Cryptoblock.getInstance().base64UrlEncode(hash), is("ungWv48Bz-pBQUDeXa4iI7ADYaOWF3qctBD_YfIAFa0"));
+        assertThat(Digests.sha256(new byte[0]).length, is(32));
+    }
+
+    @Test
+    void sha256Range() {
+        byte[] src = "xxabcxx".getBytes(US_ASCII);
+        assertThat(Digests.sha256(src, 2, 3), is(Digests.sha256("abc".getBytes(US_ASCII))));
+    }
+
+    @Test
+    void invalidRangeLeavesNoState() {
+        byte[] src = "abc".getBytes(US_ASCII);
+        assertThrows(IllegalArgumentException.class, () -> Digests.sha256(src, 1, 5));
+        assertThat(Digests.sha256(src), is(Digests.sha256("abc".getBytes(US_ASCII))));
+    }
+
+    @Test
+    void concurrentCallers() throws Exception {
+        byte[][] inputs = new byte[64][];
+        Random random = new Random(42);
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new byte[random.nextInt(2048)];
+            random.nextBytes(inputs[i]);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    MessageDigest md = MessageDigest.getInstance("SHA-256");
+                    for (int i = 0; i < 2000; i++) {
+                        byte[] input = inputs[i % inputs.length];
+                        if (!MessageDigest.isEqual(Digests.sha256(input), md.digest(input))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LruTokenStoreTest {
+
+    static TokenRecord record(String accessToken) {
+        return new TokenRecord(accessToken, "id", Instant.ofEpochSecond(1_700_000_000L), null);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LruTokenStore store = new LruTokenStore(2);
+        store.save("a", record("a"));
+        store.save("b", record("b"));
+        store.load("a");
+        store.save("c", record("c"));
+
+        assertThat(store.size(), is(2));
+        assertThat(store.load("a").getAccessToken(), is("a"));
+        assertThat(store.load("b"), is(nullValue()));
+        assertThat(store.load("c").getAccessToken(), is("c"));
+    }
+
+    @Test
+    void issuesSessionIdCookie() {
+        LruTokenStore store = new LruTokenStore(10);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        store.save(request, response, null, record("access"));
+
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        assertThat(cookie.getValue().getName(), is(KeyedTokenStore.COOKIE_NAME));
+        assertThat(cookie.getValue().getValue().length(), is(KeyedTokenStore.KEY_LENGTH));
+        assertThat(cookie.getValue().getSecure(), is(true));
+        assertThat(cookie.getValue().isHttpOnly(), is(true));
+
+        HttpServletRequest next = mock(HttpServletRequest.class);
+        when(next.getCookies()).thenReturn(new Cookie[] { cookie.getValue() });
+        assertThat(store.load(next, null).getAccessToken(), is("access"));
+        verify(next, never()).getSession(false);
+
+        store.saveLater(next, null).accept(record("renewed"));
+        assertThat(store.load(next, null).getAccessToken(), is("renewed"));
+    }
+
+    @Test
+    void unknownSessionId() {
+        LruTokenStore store = new LruTokenStore(10);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getCookies()).thenReturn(new Cookie[] { new Cookie(KeyedTokenStore.COOKIE_NAME, "forged") });
+
+        assertThat(store.load(request, null), is(nullValue()));
+        assertThat(store.saveLater(request, null), is(nullValue()));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MappedFileTokenStoreTest {
+
+    @TempDir
+    Path dir;
+
+    static String key(int i) {
+        return String.format("%022d", i);
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        try (MappedFileTokenStore store = new MappedFileTokenStore(dir.resolve("tokens"), 100)) {
+            Instant exp = Instant.ofEpochSecond(1_700_000_000L);
+            store.save(key(1), new TokenRecord("access", "id", exp, exp.minusSeconds(60)));
+            store.save(key(2), new TokenRecord("other", null, exp, null));
+
+            TokenRecord record = store.load(key(1));
+            assertThat(record.getAccessToken(), is("access"));
+            assertThat(record.getIdentityToken(), is("id"));
+            assertThat(record.getExpiration(), is(exp));
+            assertThat(record.getRenewal(), is(exp.minusSeconds(60)));
+            assertThat(store.load(key(2)).getIdentityToken(), is(nullValue()));
+            assertThat(store.load(key(2)).getRenewal(), is(nullValue()));
+            assertThat(store.load(key(3)), is(nullValue()));
+
+            store.remove(key(1));
+            assertThat(store.load(key(1)), is(nullValue()));
+        }
+    }
+
+    @Test
+    void sharedBetweenInstances() throws IOException {
+        Path file = dir.resolve("tokens");
+        try (MappedFileTokenStore first = new MappedFileTokenStore(file, 100);
+             MappedFileTokenStore second = new MappedFileTokenStore(file, 100)) {
+            first.save(key(1), LruTokenStoreTest.record("access"));
+            assertThat(second.load(key(1)).getAccessToken(), is("access"));
+            second.save(key(1), LruTokenStoreTest.record("renewed"));
+            assertThat(first.load(key(1)).getAccessToken(), is("renewed"));
+        }
+    }
+
+    @Test
+    void concurrentInstancesOfOneFile() throws Exception {
+        Path file = dir.resolve("tokens");
+        try (MappedFileTokenStore first = new MappedFileTokenStore(file, 100);
+             MappedFileTokenStore second = new MappedFileTokenStore(file, 100)) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    MappedFileTokenStore store = t % 2 == 0 ? first : second;
+                    futures.add(executor.submit(() -> {
+                        for (int i = 0; i < 500; i++) {
+                            store.save(key(i % 10), LruTokenStoreTest.record("access" + i));
+                            store.load(key(i % 10));
+                        }
+                    }));
+                }
+                /* no OverlappingFileLockException */
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void createdForOwnerOnly() throws IOException {
+        Path file = dir.resolve("tokens");
+        assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        new MappedFileTokenStore(file, 10).close();
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file)), is("rw-------"));
+    }
+
+    @Test
+    void refusesFileReadableByOthers() throws IOException {
+        Path file = dir.resolve("tokens");
+        assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Files.createFile(file);
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        assertThrows(IOException.class, () -> new MappedFileTokenStore(file, 10));
+
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+        new MappedFileTokenStore(file, 10).close();
+    }
+
+    @Test
+    void evictsEarliestExpiration() throws IOException {
+        try (MappedFileTokenStore store = new MappedFileTokenStore(dir.resolve("tokens"), MappedFileTokenStore.PROBES)) {
+            Instant exp = Instant.ofEpochSecond(1_700_000_000L);
+            for (int i = 0; i < MappedFileTokenStore.PROBES; i++) {
+                store.save(key(i), new TokenRecord("access" + i, "id", exp.plusSeconds(i == 5 ? 0 : 60), null));
+            }
+            store.save(key(100), LruTokenStoreTest.record("new"));
+
+            assertThat(store.load(key(5)), is(nullValue()));
+            assertThat(store.load(key(100)).getAccessToken(), is("new"));
+            assertThat(store.load(key(4)).getAccessToken(), is("access4"));
+        }
+    }
+
+    @Test
+    void tooLarge() throws IOException {
+        try (MappedFileTokenStore store = new MappedFileTokenStore(dir.resolve("tokens"), 10)) {
+            store.save(key(1), LruTokenStoreTest.record("x".repeat(MappedFileTokenStore.SLOT_SIZE)));
+            assertThat(store.load(key(1)), is(nullValue()));
+        }
+    }
+
+    @Test
+    void corruptLength() throws IOException {
+        Path file = dir.resolve("tokens");
+        try (MappedFileTokenStore store = new MappedFileTokenStore(file, 1)) {
+            store.save(key(1), LruTokenStoreTest.record("access"));
+            int token = new String(Files.readAllBytes(file), US_ASCII).indexOf("access");
+            try (FileChannel channel = FileChannel.open(file, WRITE)) {
+                channel.write(ByteBuffer.allocate(4).putInt(0, MappedFileTokenStore.SLOT_SIZE), token - 4);
+            }
+            assertThat(store.load(key(1)), is(nullValue()));
+
+            store.save(key(1), LruTokenStoreTest.record("access"));
+            try (FileChannel channel = FileChannel.open(file, WRITE)) {
+                channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), token + "access".length());
+            }
+            assertThat(store.load(key(1)), is(nullValue()));
+        }
+    }
+
+    @Test
+    void otherCapacity() throws IOException {
+        Path file = dir.resolve("tokens");
+        new MappedFileTokenStore(file, 10).close();
+        assertThrows(IOException.class, () -> new MappedFileTokenStore(file, 20));
+    }
+}
@@ -0,0 +1,661 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.json.Json;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.myoauth.cognito.CognitoConfig;
+import org.myoauth.cognito.CognitoError;
+import org.myoauth.cognito.CognitoService;
+import org.myoauth.cognito.JwkSet;
+import org.myoauth.cognito.JwkSetManager;
+import org.myoauth.cognito.SampleTokens;
+import org.myoauth.cognito.UserPoolToken;
+import org.myoauth.cognito.VerifiedJwt;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MyOAuthFilterTest {
+
+    private CognitoService cognito;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private HttpSession httpSession;
+    private FilterChain filterChain;
+    private AsyncContext asyncContext;
+
+    @BeforeEach
+    void setUp() {
+        cognito = mock(CognitoService.class);
+        when(cognito.verifyAccessToken(anyString(), nullable(JwkSetManager.class))).thenReturn(SampleTokens.verified("{\"token_use\":\"access\"}"));
+        when(cognito.verifyIdToken(anyString(), nullable(JwkSetManager.class))).thenReturn(SampleTokens.verified("{\"token_use\":\"id\"}"));
+
+        httpSession = mock(HttpSession.class);
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        filterChain = mock(FilterChain.class);
+        asyncContext = mock(AsyncContext.class);
+        when(request.getRequestURL()).thenReturn(new StringBuffer("https://foo.example.com/app"));
+        when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(request.getSession()).thenReturn(httpSession);
+        when(request.getSession(true)).thenReturn(httpSession);
+        when(request.getSession(false)).thenReturn(httpSession);
+        when(request.getCookies()).thenReturn(new Cookie[] { new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh") });
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync(request, response)).thenReturn(asyncContext);
+    }
+
+    static MyOAuthFilter filter(CognitoService cognito, Map<String, String> optional) throws ServletException {
+        MyOAuthFilter filter = new MyOAuthFilter();
+        filter.init(config(optional), cognito, null, mock(ServletContext.class));
+        return filter;
+    }
+
+    static CognitoConfig config(Map<String, String> optional) throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("eu-central-1_ABCDEF");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("client");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("secret");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("ohmyauth");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn("https://foo.example.com/callback");
+        optional.forEach((name, value) -> when(filterConfig.getInitParameter(name)).thenReturn(value));
+        return CognitoConfig.from(filterConfig);
+    }
+
+    static UserPoolToken userPoolToken() {
+        return UserPoolToken.from(Json.createObjectBuilder()
+                .add("access_token", "access")
+                .add("id_token", "id")
+                .add("token_type", "Bearer")
+                .add("expires_in", 3600)
+                .build());
+    }
+
+    /* The last token record saved in the http session */
+    private TokenRecord savedTokenRecord() {
+        ArgumentCaptor<TokenRecord> record = ArgumentCaptor.forClass(TokenRecord.class);
+        verify(httpSession, atLeastOnce()).setAttribute(eq(MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME), record.capture());
+        return record.getValue();
+    }
+
+    @Test
+    void initPublishesServiceAndPkcePool() throws ServletException {
+        ServletContext servletContext = mock(ServletContext.class);
+        MyOAuthFilter filter = new MyOAuthFilter();
+        filter.init(config(Map.of("pkcePoolSize", "4")), cognito, null, servletContext);
+        try {
+            verify(servletContext).setAttribute(MyOAuthFilter.OAUTH_SERVICE_ATTRIBUTE_NAME, cognito);
+            verify(servletContext).setAttribute(eq(MyOAuthFilter.PKCE_POOL_ATTRIBUTE_NAME), any(PkcePool.class));
+        } finally {
+            filter.destroy();
+        }
+    }
+
+    @Test
+    void passthroughKeepsEarlierSessionAttributes() throws IOException, ServletException {
+        TokenRecord record = new TokenRecord("access", "id", Instant.now().plusSeconds(3600), null);
+        when(request.getAttribute(MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME)).thenReturn(record);
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "memory"));
+
+        filter.passthrough(request, response, filterChain);
+
+        ArgumentCaptor<HttpServletRequest> chained = ArgumentCaptor.forClass(HttpServletRequest.class);
+        verify(filterChain).doFilter(chained.capture(), eq(response));
+        assertThat(chained.getValue().getSession().getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME), is("access"));
+        assertThat(chained.getValue().getSession().getAttribute(MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME), is("id"));
+    }
+
+    @Test
+    void refreshBlocksByDefault() throws IOException, ServletException {
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of());
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(request, never()).startAsync(any(), any());
+        assertThat(savedTokenRecord().getAccessToken(), is("access"));
+        assertThat(savedTokenRecord().getIdentityToken(), is("id"));
+        verify(request).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "access");
+        verify(filterChain).doFilter(request, response);
+
+        /* a single session attribute */
+        verify(httpSession, times(1)).setAttribute(anyString(), any());
+
+        /* session, cookies and URL are read once */
+        verify(request, times(1)).getSession(false);
+        verify(request, never()).getSession();
+        verify(request, times(1)).getCookies();
+        verify(request, never()).getRequestURL();
+    }
+
+    @Test
+    void refreshAsync() throws IOException, ServletException {
+        CompletableFuture<Either<CognitoError, UserPoolToken>> future = new CompletableFuture<>();
+        when(cognito.refreshTokenAsync("refresh")).thenReturn(future);
+        MyOAuthFilter filter = filter(cognito, Map.of("backchannelMode", "async"));
+
+        filter.doFilter(request, response, filterChain);
+
+        /* the container thread is released before the token endpoint responds */
+        verify(request).startAsync(request, response);
+        verify(filterChain, never()).doFilter(any(), any());
+        verify(asyncContext, never()).dispatch();
+
+        future.complete(Either.ofRight(userPoolToken()));
+
+        assertThat(savedTokenRecord().getAccessToken(), is("access"));
+        verify(request).setAttribute(MyOAuthFilter.RESUMED_ATTRIBUTE_NAME, Boolean.TRUE);
+        verify(asyncContext).dispatch();
+        verify(asyncContext, never()).complete();
+    }
+
+    @Test
+    void refreshAsyncDenied() throws IOException, ServletException {
+        when(cognito.refreshTokenAsync("refresh")).thenReturn(CompletableFuture.completedFuture(Either.ofLeft(CognitoError.INVALID_GRANT)));
+        MyOAuthFilter filter = filter(cognito, Map.of("backchannelMode", "async"));
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(response).sendError(401);
+        verify(asyncContext).complete();
+        verify(asyncContext, never()).dispatch();
+        verify(httpSession, never()).setAttribute(eq(MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME), any());
+    }
+
+    @Test
+    void refreshAsyncBackchannelFailure() throws IOException, ServletException {
+        when(cognito.refreshTokenAsync("refresh")).thenReturn(CompletableFuture.failedFuture(new IOException("connection reset")));
+        MyOAuthFilter filter = filter(cognito, Map.of("backchannelMode", "async"));
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    void refreshAsyncUnsupported() throws IOException, ServletException {
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("backchannelMode", "async"));
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(request, never()).startAsync(any(), any());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void resumedRequestPassesThrough() throws IOException, ServletException {
+        when(request.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+        when(request.getAttribute(MyOAuthFilter.RESUMED_ATTRIBUTE_NAME)).thenReturn(Boolean.TRUE);
+        MyOAuthFilter filter = filter(cognito, Map.of("backchannelMode", "async"));
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(filterChain).doFilter(request, response);
+        verify(cognito, never()).refreshTokenAsync(anyString());
+    }
+
+    @Test
+    void savesRenewalInstant() throws IOException, ServletException {
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("refreshAheadPercent", "10"));
+
+        Instant before = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        filter.doFilter(request, response, filterChain);
+
+        Instant renewal = savedTokenRecord().getRenewal();
+        assertThat(renewal, is(greaterThanOrEqualTo(before.plusSeconds(3240))));
+        assertThat(renewal, is(lessThanOrEqualTo(Instant.now().plusSeconds(3240))));
+    }
+
+    @Test
+    void renewsAccessTokenInBackground() throws IOException, ServletException {
+        Instant exp = Instant.now().plusSeconds(60);
+        when(httpSession.getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME)).thenReturn("current");
+        when(httpSession.getAttribute(MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME)).thenReturn(exp);
+        when(httpSession.getAttribute(MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME)).thenReturn(Instant.now().minusSeconds(1));
+        CompletableFuture<Either<CognitoError, UserPoolToken>> future = new CompletableFuture<>();
+        when(cognito.refreshTokenAsync("refresh")).thenReturn(future);
+        MyOAuthFilter filter = filter(cognito, Map.of());
+
+        filter.doFilter(request, response, filterChain);
+
+        /* the request proceeds with the current token */
+        verify(filterChain).doFilter(request, response);
+        verify(cognito).refreshTokenAsync("refresh");
+        assertThat(savedTokenRecord().getRenewal(), is(exp.truncatedTo(ChronoUnit.SECONDS)));
+        assertThat(savedTokenRecord().getAccessToken(), is("current"));
+
+        future.complete(Either.ofRight(userPoolToken()));
+
+        assertThat(savedTokenRecord().getAccessToken(), is("access"));
+    }
+
+    @Test
+    void noRenewalBeforeWindow() throws IOException, ServletException {
+        when(httpSession.getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME)).thenReturn("current");
+        when(httpSession.getAttribute(MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME)).thenReturn(Instant.now().plusSeconds(3600));
+        when(httpSession.getAttribute(MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME)).thenReturn(Instant.now().plusSeconds(3000));
+        MyOAuthFilter filter = filter(cognito, Map.of());
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(filterChain).doFilter(request, response);
+        verify(cognito, never()).refreshTokenAsync(anyString());
+    }
+
+    @Test
+    void anonymousRequestCreatesNoSession() throws IOException, ServletException {
+        HttpServletRequest anonymous = mock(HttpServletRequest.class);
+        when(anonymous.getRequestURL()).thenReturn(new StringBuffer("https://foo.example.com/css/site.css"));
+        when(anonymous.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        MyOAuthFilter filter = filter(cognito, Map.of());
+
+        filter.doFilter(anonymous, response, filterChain);
+
+        verify(filterChain).doFilter(anonymous, response);
+        verify(anonymous, never()).getSession();
+        verify(anonymous, never()).getSession(true);
+    }
+
+    @Test
+    void callbackWithoutSessionCreatesNoSession() throws IOException, ServletException {
+        HttpServletRequest callback = mock(HttpServletRequest.class);
+        when(callback.getScheme()).thenReturn("https");
+        when(callback.getServerName()).thenReturn("foo.example.com");
+        when(callback.getServerPort()).thenReturn(443);
+        when(callback.getRequestURI()).thenReturn("/callback");
+        when(callback.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(callback.getParameter("state")).thenReturn("state");
+        when(callback.getParameter("code")).thenReturn("code");
+        MyOAuthFilter filter = filter(cognito, Map.of());
+
+        filter.doFilter(callback, response, filterChain);
+
+        verify(response).sendError(401);
+        verify(callback, never()).getSession();
+        verify(callback, never()).getSession(true);
+        verify(cognito, never()).authorizationCodeExchange(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void codeExchangeUsesMatchedRedirectionURI() throws IOException, ServletException {
+        HttpServletRequest callback = mock(HttpServletRequest.class);
+        when(callback.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(callback.getScheme()).thenReturn("https");
+        when(callback.getServerName()).thenReturn("bar.example.com");
+        when(callback.getServerPort()).thenReturn(8443);
+        when(callback.getRequestURI()).thenReturn("/oauth/callback");
+        when(callback.getParameter("state")).thenReturn("state");
+        when(callback.getParameter("code")).thenReturn("code");
+        when(callback.getSession(false)).thenReturn(httpSession);
+        when(httpSession.getAttribute(MyOAuthFilter.STATE_ATTRIBUTE_NAME)).thenReturn("state");
+        when(httpSession.getAttribute(MyOAuthFilter.CODE_VERIFIER_ATTRIBUTE_NAME)).thenReturn("verifier");
+        when(cognito.authorizationCodeExchange("code", "verifier", "https://bar.example.com:8443/oauth/callback"))
+                .thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("redirectURI", "https://foo.example.com/callback, https://bar.example.com:8443/oauth/callback"));
+
+        filter.doFilter(callback, response, filterChain);
+
+        verify(cognito).authorizationCodeExchange("code", "verifier", "https://bar.example.com:8443/oauth/callback");
+        assertThat(savedTokenRecord().getAccessToken(), is("access"));
+        verify(response).sendRedirect("/index.xhtml");
+        verify(callback, never()).getRequestURL();
+    }
+
+    @Test
+    void excludedPathPassesUntouched() throws IOException, ServletException {
+        when(request.getContextPath()).thenReturn("/app");
+        when(request.getRequestURI()).thenReturn("/app/static/site.css");
+        MyOAuthFilter filter = filter(cognito, Map.of("excludePaths", "/static/*, *.js"));
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(filterChain).doFilter(request, response);
+        verify(request, never()).getSession(false);
+        verify(request, never()).getCookies();
+        verify(cognito, never()).refreshToken(anyString());
+    }
+
+    @Test
+    void includedPathIsFiltered() throws IOException, ServletException {
+        when(request.getContextPath()).thenReturn("/app");
+        when(request.getRequestURI()).thenReturn("/app/secure/index.xhtml");
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("includePaths", "/secure/*", "excludePaths", "*.css"));
+
+        filter.doFilter(request, response, filterChain);
+
+        verify(cognito).refreshToken("refresh");
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void redirectionURIIsNeverExcluded() throws IOException, ServletException {
+        HttpServletRequest callback = mock(HttpServletRequest.class);
+        when(callback.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(callback.getScheme()).thenReturn("https");
+        when(callback.getServerName()).thenReturn("foo.example.com");
+        when(callback.getServerPort()).thenReturn(443);
+        when(callback.getContextPath()).thenReturn("");
+        when(callback.getRequestURI()).thenReturn("/callback");
+        MyOAuthFilter filter = filter(cognito, Map.of("includePaths", "/secure/*"));
+
+        filter.doFilter(callback, response, filterChain);
+
+        /* no session, so the code exchange is denied, but it was attempted */
+        verify(response).sendError(401);
+        verify(filterChain, never()).doFilter(any(), any());
+    }
+
+    static String sessionCookieKey() {
+        return Base64.getEncoder().encodeToString(SessionCookieTest.key(7).getEncoded());
+    }
+
+    @Test
+    void sessionCookieExposesTokensAsRequestAttributes() throws IOException, ServletException {
+        Instant exp = Instant.now().plusSeconds(3600);
+        Cookie sessionCookie = new Cookie(SessionCookie.COOKIE_NAME,
+                new SessionCookie(List.of(SessionCookieTest.key(7))).encode(new TokenRecord("access", "id", exp, null)));
+        HttpServletRequest stateless = mock(HttpServletRequest.class);
+        when(stateless.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(stateless.getCookies()).thenReturn(new Cookie[] { sessionCookie });
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "cookie", "sessionCookieKeys", sessionCookieKey()));
+
+        filter.doFilter(stateless, response, filterChain);
+
+        verify(filterChain).doFilter(stateless, response);
+        verify(stateless).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "access");
+        verify(stateless).setAttribute(MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME, Instant.ofEpochSecond(exp.getEpochSecond()));
+        verify(stateless).setAttribute(MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME, "id");
+        verify(stateless, never()).getSession();
+        verify(stateless, never()).getSession(true);
+        verify(cognito, never()).refreshToken(anyString());
+    }
+
+    @Test
+    void sessionCookieRefresh() throws IOException, ServletException {
+        HttpServletRequest stateless = mock(HttpServletRequest.class);
+        when(stateless.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(stateless.getCookies()).thenReturn(new Cookie[] {
+                new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh"),
+                new Cookie(SessionCookie.COOKIE_NAME, "tampered")
+        });
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "cookie", "sessionCookieKeys", sessionCookieKey()));
+
+        filter.doFilter(stateless, response, filterChain);
+
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        TokenRecord tokens = new SessionCookie(List.of(SessionCookieTest.key(7))).decode(cookie.getValue().getValue());
+        assertThat(tokens.getAccessToken(), is("access"));
+        assertThat(tokens.getIdentityToken(), is("id"));
+        verify(stateless).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "access");
+        verify(filterChain).doFilter(stateless, response);
+        verify(stateless, never()).getSession();
+        verify(stateless, never()).getSession(true);
+    }
+
+    @Test
+    void sessionCookieRenewsInline() throws IOException, ServletException {
+        Instant exp = Instant.now().plusSeconds(60);
+        SessionCookie codec = new SessionCookie(List.of(SessionCookieTest.key(7)));
+        HttpServletRequest stateless = mock(HttpServletRequest.class);
+        when(stateless.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(stateless.getCookies()).thenReturn(new Cookie[] {
+                new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh"),
+                new Cookie(SessionCookie.COOKIE_NAME, codec.encode(new TokenRecord("old", "id", exp, Instant.now().minusSeconds(1))))
+        });
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "cookie", "sessionCookieKeys", sessionCookieKey()));
+
+        filter.doFilter(stateless, response, filterChain);
+
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        assertThat(codec.decode(cookie.getValue().getValue()).getAccessToken(), is("access"));
+        verify(stateless).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "access");
+        verify(filterChain).doFilter(stateless, response);
+    }
+
+    @Test
+    void sessionCookieFailedRenewalKeepsToken() throws IOException, ServletException {
+        Instant exp = Instant.now().plusSeconds(60);
+        SessionCookie codec = new SessionCookie(List.of(SessionCookieTest.key(7)));
+        HttpServletRequest stateless = mock(HttpServletRequest.class);
+        when(stateless.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(stateless.getCookies()).thenReturn(new Cookie[] {
+                new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh"),
+                new Cookie(SessionCookie.COOKIE_NAME, codec.encode(new TokenRecord("old", "id", exp, Instant.now().minusSeconds(1))))
+        });
+        when(cognito.refreshToken("refresh")).thenThrow(new IOException("unreachable"));
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "cookie", "sessionCookieKeys", sessionCookieKey()));
+
+        filter.doFilter(stateless, response, filterChain);
+
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        TokenRecord kept = codec.decode(cookie.getValue().getValue());
+        assertThat(kept.getAccessToken(), is("old"));
+        assertThat(kept.getRenewal(), is(Instant.ofEpochSecond(exp.getEpochSecond())));
+        verify(stateless).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "old");
+        verify(filterChain).doFilter(stateless, response);
+        verify(response, never()).sendError(401);
+    }
+
+    @Test
+    void sessionCookieRenewsAsync() throws IOException, ServletException {
+        SessionCookie codec = new SessionCookie(List.of(SessionCookieTest.key(7)));
+        when(request.getCookies()).thenReturn(new Cookie[] {
+                new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh"),
+                new Cookie(SessionCookie.COOKIE_NAME, codec.encode(new TokenRecord("old", "id", Instant.now().plusSeconds(60), Instant.now().minusSeconds(1))))
+        });
+        CompletableFuture<Either<CognitoError, UserPoolToken>> future = new CompletableFuture<>();
+        when(cognito.refreshTokenAsync("refresh")).thenReturn(future);
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "cookie", "sessionCookieKeys", sessionCookieKey(), "backchannelMode", "async"));
+
+        filter.doFilter(request, response, filterChain);
+        verify(request).startAsync(request, response);
+
+        /* the request proceeds with the current token */
+        future.completeExceptionally(new IOException("unreachable"));
+        verify(asyncContext).dispatch();
+        verify(request).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "old");
+        verify(response, never()).sendError(503);
+    }
+
+    @Test
+    void sessionCookieLoginWithoutHttpSession() throws IOException, ServletException {
+        ServletContext servletContext = mock(ServletContext.class);
+        MyOAuthFilter filter = new MyOAuthFilter();
+        filter.init(config(Map.of("sessionStore", "cookie", "sessionCookieKeys", sessionCookieKey())), cognito, null, servletContext);
+        ArgumentCaptor<Login> login = ArgumentCaptor.forClass(Login.class);
+        verify(servletContext).setAttribute(eq(MyOAuthFilter.LOGIN_ATTRIBUTE_NAME), login.capture());
+
+        HttpServletRequest start = mock(HttpServletRequest.class);
+        HttpServletResponse startResponse = mock(HttpServletResponse.class);
+        login.getValue().begin(start, startResponse);
+        ArgumentCaptor<String> state = ArgumentCaptor.forClass(String.class);
+        verify(cognito).authorizationRequest(state.capture(), anyString());
+        ArgumentCaptor<Cookie> loginCookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(startResponse).addCookie(loginCookie.capture());
+        assertThat(loginCookie.getValue().getName(), is(SessionCookie.LOGIN_COOKIE_NAME));
+        verify(start, never()).getSession();
+
+        HttpServletRequest callback = mock(HttpServletRequest.class);
+        when(callback.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(callback.getScheme()).thenReturn("https");
+        when(callback.getServerName()).thenReturn("foo.example.com");
+        when(callback.getServerPort()).thenReturn(443);
+        when(callback.getRequestURI()).thenReturn("/callback");
+        when(callback.getParameter("state")).thenReturn(state.getValue());
+        when(callback.getParameter("code")).thenReturn("code");
+        when(callback.getCookies()).thenReturn(new Cookie[] { loginCookie.getValue() });
+        when(cognito.authorizationCodeExchange(eq("code"), anyString(), eq("https://foo.example.com/callback"))).thenReturn(Either.ofRight(userPoolToken()));
+
+        filter.doFilter(callback, response, filterChain);
+
+        ArgumentCaptor<String> verifier = ArgumentCaptor.forClass(String.class);
+        verify(cognito).authorizationCodeExchange(eq("code"), verifier.capture(), eq("https://foo.example.com/callback"));
+        assertThat(verifier.getValue().length(), is(Cryptoblock.CODE_VERIFIER_LENGTH));
+        ArgumentCaptor<Cookie> cookies = ArgumentCaptor.forClass(Cookie.class);
+        verify(response, atLeastOnce()).addCookie(cookies.capture());
+        assertThat(cookies.getAllValues().stream().anyMatch(cookie -> cookie.getName().equals(SessionCookie.COOKIE_NAME)), is(true));
+        assertThat(cookies.getAllValues().stream().anyMatch(cookie -> cookie.getName().equals(SessionCookie.LOGIN_COOKIE_NAME) && cookie.getMaxAge() == 0), is(true));
+        verify(response).sendRedirect("/index.xhtml");
+        verify(callback, never()).getSession();
+        verify(callback, never()).getSession(true);
+    }
+
+    @Test
+    void memorySessionStore() throws IOException, ServletException {
+        HttpServletRequest first = mock(HttpServletRequest.class);
+        when(first.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(first.getCookies()).thenReturn(new Cookie[] { new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh") });
+        when(cognito.refreshToken("refresh")).thenReturn(Either.ofRight(userPoolToken()));
+        MyOAuthFilter filter = filter(cognito, Map.of("sessionStore", "memory"));
+
+        filter.doFilter(first, response, filterChain);
+
+        ArgumentCaptor<Cookie> sessionId = ArgumentCaptor.forClass(Cookie.class);
+        verify(response, times(1)).addCookie(sessionId.capture());
+        assertThat(sessionId.getValue().getName(), is(KeyedTokenStore.COOKIE_NAME));
+        verify(first).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "access");
+        verify(first, never()).getSession();
+
+        HttpServletRequest second = mock(HttpServletRequest.class);
+        when(second.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(second.getCookies()).thenReturn(new Cookie[] {
+                new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh"), sessionId.getValue()
+        });
+
+        filter.doFilter(second, response, filterChain);
+
+        verify(cognito, times(1)).refreshToken("refresh");
+        verify(second).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "access");
+        verify(filterChain).doFilter(second, response);
+    }
+
+    @Test
+    void bearerToken() throws IOException, ServletException {
+        HttpServletRequest api = mock(HttpServletRequest.class);
+        when(api.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(api.getHeader("Authorization")).thenReturn("Bearer header.payload.signature");
+        Instant exp = Instant.ofEpochSecond(Instant.now().getEpochSecond() + 3600);
+        VerifiedJwt verified = SampleTokens.verified("{\"sub\":\"alice\",\"exp\":" + exp.getEpochSecond() + "}");
+        when(cognito.verifyAccessToken(eq("header.payload.signature"), nullable(JwkSetManager.class))).thenReturn(verified);
+        MyOAuthFilter filter = filter(cognito, Map.of("authenticationMode", "bearer"));
+
+        filter.doFilter(api, response, filterChain);
+
+        verify(api).setAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, "header.payload.signature");
+        verify(api).setAttribute(MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME, exp);
+        verify(api).setAttribute(MyOAuthFilter.CLAIMS_ATTRIBUTE_NAME, verified);
+        verify(filterChain).doFilter(api, response);
+        verify(api, never()).getSession();
+        verify(api, never()).getSession(false);
+        verify(api, never()).getCookies();
+    }
+
+    @Test
+    void invalidBearerToken() throws IOException, ServletException {
+        HttpServletRequest api = mock(HttpServletRequest.class);
+        when(api.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(api.getHeader("Authorization")).thenReturn("bearer forged");
+        when(cognito.verifyAccessToken(eq("forged"), nullable(JwkSetManager.class))).thenReturn(null);
+        MyOAuthFilter filter = filter(cognito, Map.of("authenticationMode", "bearer"));
+
+        filter.doFilter(api, response, filterChain);
+
+        verify(cognito).verifyAccessToken(eq("forged"), nullable(JwkSetManager.class));
+        verify(response).setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\"");
+        verify(response).sendError(401);
+        verify(filterChain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void truncatedBearerTokenSignature() throws IOException, ServletException {
+        CognitoConfig config = config(Map.of("authenticationMode", "bearer"));
+        CognitoService cognitoService = new CognitoService(config);
+        String token = SampleTokens.accessToken();
+        String truncated = token.substring(0, token.lastIndexOf('.') + 1) + "AAAA";
+        HttpServletRequest api = mock(HttpServletRequest.class);
+        when(api.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(api.getHeader("Authorization")).thenReturn("Bearer " + truncated);
+
+        try (JwkSetManager keys = new JwkSetManager(cognitoService, JwkSet.of(List.of(SampleTokens.jwk())), Duration.ofHours(1), Duration.ofMinutes(1))) {
+            MyOAuthFilter filter = new MyOAuthFilter();
+            filter.init(config, cognitoService, keys, mock(ServletContext.class));
+
+            filter.doFilter(api, response, filterChain);
+        }
+
+        verify(response).setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\"");
+        verify(response).sendError(401);
+        verify(filterChain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    void withoutBearerToken() throws IOException, ServletException {
+        HttpServletRequest api = mock(HttpServletRequest.class);
+        when(api.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        MyOAuthFilter filter = filter(cognito, Map.of("authenticationMode", "bearer"));
+
+        filter.doFilter(api, response, filterChain);
+
+        verify(filterChain).doFilter(api, response);
+        verify(api, never()).setAttribute(anyString(), any());
+        verify(api, never()).getSession(false);
+    }
+}
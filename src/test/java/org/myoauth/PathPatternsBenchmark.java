@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Matching a path against a few hundred patterns, compiled into tries versus one regular expression per pattern.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.myoauth.PathPatternsBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathPatternsBenchmark {
+
+    @Param({ "/static/module-137/app.js", "/img/logo.svg", "/module-42/index.xhtml", "/docs/a/b/manual.pdf" })
+    public String path;
+
+    private PathPatterns patterns;
+    private List<Pattern> regexes;
+
+    @Setup
+    public void setup() {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            list.add("/static/module-" + i + "/*");
+        }
+        for (int i = 0; i < 50; i++) {
+            list.add("/assets/page-" + i + ".html");
+        }
+        for (String extension : new String[] { "css", "js", "map", "png", "jpg", "gif", "svg", "ico", "woff", "woff2", "ttf", "eot" }) {
+            list.add("*." + extension);
+        }
+        list.add("/docs/**/*.pdf");
+
+        patterns = PathPatterns.compile(list);
+        regexes = new ArrayList<>();
+        for (String pattern : list) {
+            regexes.add(regex(pattern));
+        }
+    }
+
+    /* Leading and trailing wildcards match across segments, like in PathPatterns */
+    private static Pattern regex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append(i == 0 || i == pattern.length() - 1 ? ".*" : "[^/]*");
+            } else if (c == '.') {
+                regex.append("\\.");
+            } else {
+                regex.append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Benchmark
+    public boolean tries() {
+        return patterns.matches(path, 0);
+    }
+
+    @Benchmark
+    public boolean regexPerPattern() {
+        for (Pattern regex : regexes) {
+            if (regex.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PathPatternsBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
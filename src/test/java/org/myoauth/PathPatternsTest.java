@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PathPatternsTest {
+
+    @Test
+    void exact() {
+        PathPatterns patterns = PathPatterns.compile(List.of("/favicon.ico", "/robots.txt"));
+        assertThat(patterns.matches("/favicon.ico", 0), is(true));
+        assertThat(patterns.matches("/robots.txt", 0), is(true));
+        assertThat(patterns.matches("/favicon.ico2", 0), is(false));
+        assertThat(patterns.matches("/favicon", 0), is(false));
+        assertThat(patterns.matches("/img/favicon.ico", 0), is(false));
+    }
+
+    @Test
+    void prefix() {
+        PathPatterns patterns = PathPatterns.compile(List.of("/static/*", "/webjars/**"));
+        assertThat(patterns.matches("/static/site.css", 0), is(true));
+        assertThat(patterns.matches("/static/js/app.js", 0), is(true));
+        assertThat(patterns.matches("/static/", 0), is(true));
+        assertThat(patterns.matches("/static", 0), is(true));
+        assertThat(patterns.matches("/webjars/jquery/jquery.js", 0), is(true));
+        assertThat(patterns.matches("/staticfile", 0), is(false));
+        assertThat(patterns.matches("/app/static/site.css", 0), is(false));
+    }
+
+    @Test
+    void everything() {
+        PathPatterns patterns = PathPatterns.compile(List.of("/*"));
+        assertThat(patterns.matches("/", 0), is(true));
+        assertThat(patterns.matches("/index.xhtml", 0), is(true));
+    }
+
+    @Test
+    void suffix() {
+        PathPatterns patterns = PathPatterns.compile(List.of("*.css", "*.js", "*-min.map"));
+        assertThat(patterns.matches("/site.css", 0), is(true));
+        assertThat(patterns.matches("/a/b/c/app.js", 0), is(true));
+        assertThat(patterns.matches("/a/app-min.map", 0), is(true));
+        assertThat(patterns.matches("/a/app.map", 0), is(false));
+        assertThat(patterns.matches("/site.css.xhtml", 0), is(false));
+        assertThat(patterns.matches("/json", 0), is(false));
+    }
+
+    @Test
+    void glob() {
+        PathPatterns patterns = PathPatterns.compile(List.of("/img/*/thumb-?.png", "/docs/**/*.pdf"));
+        assertThat(patterns.matches("/img/cats/thumb-1.png", 0), is(true));
+        assertThat(patterns.matches("/img/cats/dogs/thumb-1.png", 0), is(false));
+        assertThat(patterns.matches("/img/cats/thumb-12.png", 0), is(false));
+        assertThat(patterns.matches("/docs/a/b/c.pdf", 0), is(true));
+        assertThat(patterns.matches("/docs/a.b/c.pdf", 0), is(true));
+        assertThat(patterns.matches("/docs/c.txt", 0), is(false));
+    }
+
+    @Test
+    void contextPath() {
+        PathPatterns patterns = PathPatterns.compile(List.of("/static/*", "/favicon.ico", "/img/*.png"));
+        assertThat(patterns.matches("/app/static/site.css", "/app".length()), is(true));
+        assertThat(patterns.matches("/app/favicon.ico", "/app".length()), is(true));
+        assertThat(patterns.matches("/app/img/logo.png", "/app".length()), is(true));
+        assertThat(patterns.matches("/app/index.xhtml", "/app".length()), is(false));
+    }
+
+    @Test
+    void pathParameters() {
+        PathPatterns patterns = PathPatterns.compile(List.of("*.css", "/favicon.ico"));
+        assertThat(patterns.matches("/site.css;jsessionid=1234", 0), is(true));
+        assertThat(patterns.matches("/favicon.ico;jsessionid=1234", 0), is(true));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> PathPatterns.compile(List.of("static/*")));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PkcePoolTest {
+
+    private final Cryptoblock cryptoblock = Cryptoblock.getInstance();
+    private PkcePool pool;
+
+    @AfterEach
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void takeFromFilledPool() throws InterruptedException {
+        pool = new PkcePool(cryptoblock, 8);
+        pool.start();
+        awaitDepth(8);
+
+        Pkce pkce = pool.take();
+
+        assertThat(pkce.getCodeVerifier().length(), is(Cryptoblock.CODE_VERIFIER_LENGTH));
+        assertThat(pkce.getCodeChallenge(), is(cryptoblock.codeChallenge(pkce.getCodeVerifier())));
+        assertThat(pool.hitCount(), is(1L));
+        assertThat(pool.missCount(), is(0L));
+    }
+
+    @Test
+    void takeFromEmptyPool() {
+        pool = new PkcePool(cryptoblock, 8);
+        pool.close();
+
+        Pkce pkce = pool.take();
+
+        assertThat(pkce.getCodeChallenge(), is(cryptoblock.codeChallenge(pkce.getCodeVerifier())));
+        assertThat(pool.missCount(), is(1L));
+        assertThat(pool.depth(), is(0));
+    }
+
+    @Test
+    void neverHandsOutTheSameParametersTwice() throws InterruptedException {
+        pool = new PkcePool(cryptoblock, 16);
+        pool.start();
+        Set<String> states = new HashSet<>();
+        Set<String> verifiers = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            Pkce pkce = pool.take();
+            assertTrue(states.add(pkce.getState()));
+            assertTrue(verifiers.add(pkce.getCodeVerifier()));
+        }
+        assertThat(pool.hitCount() + pool.missCount(), is(200L));
+
+        /* refilled in the background */
+        awaitDepth(16);
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new PkcePool(cryptoblock, 0));
+    }
+
+    private void awaitDepth(int depth) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.depth() < depth; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.depth(), is(depth));
+    }
+
+}
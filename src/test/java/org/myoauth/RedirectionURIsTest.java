@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedirectionURIsTest {
+
+    private final RedirectionURIs redirectionURIs = RedirectionURIs.of(List.of(
+            "https://foo.example.com/callback",
+            "http://localhost:8080/app/callback"));
+
+    static HttpServletRequest request(String scheme, String host, int port, String path) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getScheme()).thenReturn(scheme);
+        when(request.getServerName()).thenReturn(host);
+        when(request.getServerPort()).thenReturn(port);
+        when(request.getRequestURI()).thenReturn(path);
+        return request;
+    }
+
+    @Test
+    void match() {
+        assertThat(redirectionURIs.match(request("https", "foo.example.com", 443, "/callback")), is("https://foo.example.com/callback"));
+        assertThat(redirectionURIs.match(request("http", "localhost", 8080, "/app/callback")), is("http://localhost:8080/app/callback"));
+        assertThat(redirectionURIs.match(request("https", "FOO.example.com", 443, "/callback")), is("https://foo.example.com/callback"));
+    }
+
+    @Test
+    void noMatch() {
+        assertThat(redirectionURIs.match(request("https", "foo.example.com", 443, "/callback/")), is(nullValue()));
+        assertThat(redirectionURIs.match(request("https", "foo.example.com", 8443, "/callback")), is(nullValue()));
+        assertThat(redirectionURIs.match(request("http", "foo.example.com", 443, "/callback")), is(nullValue()));
+        assertThat(redirectionURIs.match(request("https", "bar.example.com", 443, "/callback")), is(nullValue()));
+        assertThat(redirectionURIs.match(request("http", "localhost", 8080, "/callback")), is(nullValue()));
+    }
+
+    @Test
+    void pathFirst() {
+        HttpServletRequest request = request("https", "foo.example.com", 443, "/index.xhtml");
+
+        assertThat(redirectionURIs.match(request), is(nullValue()));
+        verify(request, never()).getServerName();
+        verify(request, never()).getRequestURL();
+    }
+
+    @Test
+    void emptyPath() {
+        RedirectionURIs root = RedirectionURIs.of(List.of("https://foo.example.com"));
+        assertThat(root.match(request("https", "foo.example.com", 443, "/")), is("https://foo.example.com"));
+    }
+
+    @Test
+    void relativeURI() {
+        assertThrows(IllegalArgumentException.class, () -> RedirectionURIs.of(List.of("/callback")));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RequestStateTest {
+
+    @Test
+    void anonymous() {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+
+        RequestState state = RequestState.of(request, null, new HttpSessionTokenStore());
+
+        assertThat(state.getSession(), is(nullValue()));
+        assertThat(state.hasAccessToken(), is(false));
+        assertThat(state.isAccessTokenExpired(Instant.now()), is(true));
+        assertThat(state.isAccessTokenRenewalDue(Instant.now()), is(false));
+        assertThat(state.hasRefreshToken(), is(false));
+        verify(request, never()).getSession();
+        verify(request, never()).getSession(true);
+    }
+
+    /* The attributes of earlier versions */
+    @Test
+    void accessToken() {
+        Instant now = Instant.now();
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME)).thenReturn("access");
+        when(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME)).thenReturn(now.plusSeconds(60));
+        when(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME)).thenReturn(now.plusSeconds(30));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(false)).thenReturn(session);
+
+        RequestState state = RequestState.of(request, null, new HttpSessionTokenStore());
+
+        assertThat(state.hasAccessToken(), is(true));
+        assertThat(state.isAccessTokenExpired(now), is(false));
+        assertThat(state.isAccessTokenExpired(now.plusSeconds(60)), is(true));
+        assertThat(state.isAccessTokenRenewalDue(now), is(false));
+        assertThat(state.isAccessTokenRenewalDue(now.plusSeconds(30)), is(true));
+    }
+
+    @Test
+    void tokenRecord() {
+        Instant now = Instant.now();
+        HttpSession session = mock(HttpSession.class);
+        when(session.getAttribute(MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME)).thenReturn(new TokenRecord("access", "id", now.plusSeconds(60), null));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getSession(false)).thenReturn(session);
+
+        RequestState state = RequestState.of(request, null, new HttpSessionTokenStore());
+
+        assertThat(state.hasAccessToken(), is(true));
+        assertThat(state.isAccessTokenExpired(now), is(false));
+        assertThat(state.isAccessTokenRenewalDue(now.plusSeconds(30)), is(false));
+        verify(session, never()).getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME);
+    }
+
+    @Test
+    void refreshToken() {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getCookies()).thenReturn(new Cookie[] {
+                new Cookie("JSESSIONID", "1234"),
+                new Cookie(MyOAuthFilter.REFRESH_TOKEN_COOKIE_NAME, "refresh")
+        });
+
+        RequestState state = RequestState.of(request, "https://foo.example.com/callback", new HttpSessionTokenStore());
+
+        assertThat(state.isRedirection(), is(true));
+        assertThat(state.getRedirectionURI(), is("https://foo.example.com/callback"));
+        assertThat(state.hasRefreshToken(), is(true));
+        assertThat(state.getRefreshToken(), is("refresh"));
+    }
+}
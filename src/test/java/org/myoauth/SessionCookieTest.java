@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionCookieTest {
+
+    private static final SecretKey OLD_KEY = key(1);
+    private static final SecretKey NEW_KEY = key(2);
+
+    static SecretKey key(int seed) {
+        byte[] key = new byte[32];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (seed * 31 + i);
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    static TokenRecord tokens() {
+        return new TokenRecord("access.token.signature", "identity.token.signature", Instant.ofEpochSecond(1_700_000_000L), Instant.ofEpochSecond(1_699_999_640L));
+    }
+
+    @Test
+    void roundTrip() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+
+        TokenRecord tokens = sessionCookie.decode(sessionCookie.encode(tokens()));
+
+        assertThat(tokens.getAccessToken(), is("access.token.signature"));
+        assertThat(tokens.getIdentityToken(), is("identity.token.signature"));
+        assertThat(tokens.getExpiration(), is(Instant.ofEpochSecond(1_700_000_000L)));
+        assertThat(tokens.getRenewal(), is(Instant.ofEpochSecond(1_699_999_640L)));
+        assertThat(sessionCookie.decode(sessionCookie.encode(tokens.withRenewal(null))).getRenewal(), is(nullValue()));
+    }
+
+    @Test
+    void cookieAttributes() {
+        List<Cookie> cookies = save(new SessionCookie(List.of(NEW_KEY)), tokens());
+
+        assertThat(cookies.size(), is(1));
+        Cookie cookie = cookies.get(0);
+        assertThat(cookie.getName(), is(SessionCookie.COOKIE_NAME));
+        assertThat(cookie.getPath(), is("/"));
+        assertThat(cookie.getSecure(), is(true));
+        assertThat(cookie.isHttpOnly(), is(true));
+    }
+
+    @Test
+    void cognitoSizedTokensAreSplit() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+        TokenRecord record = new TokenRecord("a".repeat(1300), "i".repeat(1900), Instant.ofEpochSecond(1_700_000_000L), null);
+
+        List<Cookie> cookies = save(sessionCookie, record);
+
+        assertThat(cookies.size(), is(2));
+        assertThat(cookies.get(1).getName(), is(SessionCookie.COOKIE_NAME + ".1"));
+        for (Cookie cookie : cookies) {
+            /* name, value and the attributes Path=/; Secure; HttpOnly */
+            assertThat(cookie.getName().length() + 1 + cookie.getValue().length() + 30, is(lessThan(4096)));
+        }
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getCookies()).thenReturn(cookies.toArray(new Cookie[0]));
+        TokenRecord loaded = sessionCookie.load(request, null);
+        assertThat(loaded.getAccessToken(), is(record.getAccessToken()));
+        assertThat(loaded.getIdentityToken(), is(record.getIdentityToken()));
+    }
+
+    @Test
+    void staleChunksAreExpired() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getCookies()).thenReturn(new Cookie[] {
+                new Cookie(SessionCookie.COOKIE_NAME, "old"), new Cookie(SessionCookie.COOKIE_NAME + ".1", "old")
+        });
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        sessionCookie.save(request, response, null, tokens());
+
+        ArgumentCaptor<Cookie> cookies = ArgumentCaptor.forClass(Cookie.class);
+        verify(response, times(2)).addCookie(cookies.capture());
+        assertThat(cookies.getAllValues().get(0).getName(), is(SessionCookie.COOKIE_NAME));
+        assertThat(cookies.getAllValues().get(1).getName(), is(SessionCookie.COOKIE_NAME + ".1"));
+        assertThat(cookies.getAllValues().get(1).getMaxAge(), is(0));
+    }
+
+    @Test
+    void oversizeTokensAreNotSaved() {
+        String jwt = "x".repeat(SessionCookie.CHUNK_LENGTH * SessionCookie.MAX_CHUNKS / 2);
+        List<Cookie> cookies = save(new SessionCookie(List.of(NEW_KEY)), new TokenRecord(jwt, jwt, Instant.now(), null));
+
+        assertThat(cookies.size(), is(1));
+        assertThat(cookies.get(0).getMaxAge(), is(0));
+    }
+
+    /* The cookies a response receives when the tokens are saved */
+    private static List<Cookie> save(SessionCookie sessionCookie, TokenRecord record) {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        sessionCookie.save(mock(HttpServletRequest.class), response, null, record);
+        ArgumentCaptor<Cookie> cookies = ArgumentCaptor.forClass(Cookie.class);
+        verify(response, atLeastOnce()).addCookie(cookies.capture());
+        return cookies.getAllValues();
+    }
+
+    @Test
+    void freshIvPerCookie() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+        assertThat(sessionCookie.encode(tokens()), is(not(sessionCookie.encode(tokens()))));
+    }
+
+    @Test
+    void tampered() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+        byte[] value = Base64.getUrlDecoder().decode(sessionCookie.encode(tokens()));
+
+        for (int i = 0; i < value.length; i++) {
+            byte[] tampered = value.clone();
+            tampered[i] ^= 1;
+            assertThat(sessionCookie.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(tampered)), is(nullValue()));
+        }
+    }
+
+    @Test
+    void malformed() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+        assertThat(sessionCookie.decode(""), is(nullValue()));
+        assertThat(sessionCookie.decode("not base64!"), is(nullValue()));
+        assertThat(sessionCookie.decode("AQID"), is(nullValue()));
+    }
+
+    @Test
+    void keyRotation() {
+        String oldCookie = new SessionCookie(List.of(OLD_KEY)).encode(tokens());
+
+        /* the new key encrypts, the old key still decrypts */
+        SessionCookie rotated = new SessionCookie(List.of(NEW_KEY, OLD_KEY));
+        assertThat(rotated.decode(oldCookie).getAccessToken(), is("access.token.signature"));
+        String newCookie = rotated.encode(tokens());
+        assertThat(new SessionCookie(List.of(NEW_KEY)).decode(newCookie).getAccessToken(), is("access.token.signature"));
+
+        /* the old key is retired */
+        assertThat(new SessionCookie(List.of(NEW_KEY)).decode(oldCookie), is(nullValue()));
+    }
+
+    @Test
+    void compact() {
+        String jwt = "x".repeat(1000);
+        String value = new SessionCookie(List.of(NEW_KEY)).encode(new TokenRecord(jwt, jwt, Instant.now(), null));
+
+        /* two tokens plus 61 bytes of overhead, base64url encoded */
+        assertThat(value.length(), is(lessThan((2000 + 61) * 4 / 3 + 4)));
+    }
+
+    @Test
+    void login() {
+        SessionCookie sessionCookie = new SessionCookie(List.of(NEW_KEY));
+        Pkce pkce = Pkce.create(Cryptoblock.getInstance());
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        sessionCookie.saveLogin(response, pkce);
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        assertThat(cookie.getValue().getMaxAge(), is((int) SessionCookie.LOGIN_MAX_AGE.getSeconds()));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getCookies()).thenReturn(new Cookie[] { cookie.getValue() });
+        Pkce login = sessionCookie.loadLogin(request);
+        assertThat(login.getState(), is(pkce.getState()));
+        assertThat(login.getCodeVerifier(), is(pkce.getCodeVerifier()));
+
+        /* the name is authenticated, a login cookie is no session cookie and the other way round */
+        assertThat(sessionCookie.decode(cookie.getValue().getValue()), is(nullValue()));
+        when(request.getCookies()).thenReturn(new Cookie[] { new Cookie(SessionCookie.LOGIN_COOKIE_NAME, sessionCookie.encode(tokens())) });
+        assertThat(sessionCookie.loadLogin(request), is(nullValue()));
+    }
+
+    @Test
+    void noKey() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionCookie(List.of()));
+    }
+}
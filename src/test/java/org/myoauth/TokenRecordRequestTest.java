@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenRecordRequestTest {
+
+    private final Instant exp = Instant.ofEpochSecond(1_700_000_000L);
+    private final TokenRecord record = new TokenRecord("access", "id", exp, exp.minusSeconds(60));
+
+    private HttpServletRequest request;
+    private HttpSession httpSession;
+
+    @BeforeEach
+    void setUp() {
+        request = mock(HttpServletRequest.class);
+        httpSession = mock(HttpSession.class);
+        when(request.getSession(true)).thenReturn(httpSession);
+        when(request.getSession(false)).thenReturn(httpSession);
+        when(httpSession.getAttributeNames()).thenReturn(Collections.enumeration(List.of("other")));
+        when(httpSession.getAttribute("other")).thenReturn("value");
+    }
+
+    @Test
+    void earlierAttributeNames() {
+        HttpSession session = new TokenRecordRequest(request, record).getSession();
+
+        assertThat(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME), is("access"));
+        assertThat(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME), is(exp));
+        assertThat(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME), is(exp.minusSeconds(60)));
+        assertThat(session.getAttribute(MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME), is("id"));
+        assertThat(session.getAttribute("other"), is("value"));
+        assertThat(Collections.list(session.getAttributeNames()), containsInAnyOrder("other",
+                MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME, MyOAuthFilter.ACCESS_TOKEN_EXPIRATION_ATTRIBUTE_NAME,
+                MyOAuthFilter.ACCESS_TOKEN_RENEWAL_ATTRIBUTE_NAME, MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME));
+
+        session.setAttribute("other", "changed");
+        verify(httpSession).setAttribute("other", "changed");
+    }
+
+    @Test
+    void savedRecordWins() {
+        when(httpSession.getAttribute(MyOAuthFilter.TOKEN_RECORD_ATTRIBUTE_NAME)).thenReturn(new TokenRecord("renewed", null, exp.plusSeconds(3600), null));
+        HttpSession session = new TokenRecordRequest(request, record).getSession(false);
+
+        assertThat(session.getAttribute(MyOAuthFilter.ACCESS_TOKEN_ATTRIBUTE_NAME), is("renewed"));
+        assertThat(session.getAttribute(MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME), is(nullValue()));
+        assertThat(Collections.list(session.getAttributeNames()), not(hasItem(MyOAuthFilter.IDENTITY_TOKEN_ATTRIBUTE_NAME)));
+    }
+
+    @Test
+    void noSession() {
+        when(request.getSession(false)).thenReturn(null);
+        TokenRecordRequest wrapper = new TokenRecordRequest(request, record);
+
+        assertThat(wrapper.getSession(false), is(nullValue()));
+        assertThat(wrapper.getSession(), is(sameInstance(wrapper.getSession(true))));
+    }
+}
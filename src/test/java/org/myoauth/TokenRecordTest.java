@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class TokenRecordTest {
+
+    static byte[] serialize(Object... objects) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Object object : objects) {
+                out.writeObject(object);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    void serialization() throws IOException, ClassNotFoundException {
+        Instant exp = Instant.ofEpochSecond(1_700_000_000L);
+        TokenRecord record = new TokenRecord("access", "id", exp, exp.minusSeconds(360));
+
+        TokenRecord copy = (TokenRecord) deserialize(serialize(record));
+
+        assertThat(copy.getAccessToken(), is("access"));
+        assertThat(copy.getIdentityToken(), is("id"));
+        assertThat(copy.getExpiration(), is(exp));
+        assertThat(copy.getRenewal(), is(exp.minusSeconds(360)));
+    }
+
+    @Test
+    void serializationWithoutOptionalParts() throws IOException, ClassNotFoundException {
+        TokenRecord copy = (TokenRecord) deserialize(serialize(new TokenRecord("access", null, Instant.EPOCH, null)));
+
+        assertThat(copy.getIdentityToken(), is(nullValue()));
+        assertThat(copy.getRenewal(), is(nullValue()));
+    }
+
+    @Test
+    void smallerThanSeparateAttributes() throws IOException {
+        String accessToken = "a".repeat(1000);
+        String identityToken = "i".repeat(1200);
+        Instant exp = Instant.ofEpochSecond(1_700_000_000L);
+
+        /* each attribute is serialized on its own by a session manager */
+        int separate = serialize(accessToken).length + serialize(identityToken).length
+                + serialize(exp).length + serialize(exp.minusSeconds(360)).length;
+        int record = serialize(new TokenRecord(accessToken, identityToken, exp, exp.minusSeconds(360))).length;
+
+        assertThat(record, is(lessThan(separate)));
+        assertThat(record - accessToken.length() - identityToken.length(), is(lessThan(100)));
+    }
+
+    @Test
+    void tokensAreNotCopied() {
+        String accessToken = "a".repeat(1000);
+        TokenRecord record = new TokenRecord(accessToken, null, Instant.EPOCH, null);
+        assertThat(record.getAccessToken(), is(sameInstance(accessToken)));
+        assertThat(record.withRenewal(Instant.EPOCH).getAccessToken(), is(sameInstance(accessToken)));
+    }
+
+    @Test
+    void withRenewal() {
+        TokenRecord record = new TokenRecord("access", "id", Instant.EPOCH, null);
+        assertThat(record.withRenewal(Instant.EPOCH).getRenewal(), is(Instant.EPOCH));
+        assertThat(record.withRenewal(Instant.EPOCH).getAccessToken(), is("access"));
+        assertThat(record.getRenewal(), is(nullValue()));
+    }
+}
@@ -20,6 +20,8 @@ import jakarta.servlet.ServletException;
 import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -52,4 +54,101 @@ class CognitoConfigTest {
         when(filterConfig.getInitParameter("redirectURI")).thenReturn("https://foo.example.com/oauth/callback");
         assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
     }
-}
\ No newline at end of file
+
+    @Test
+    void from_severalRedirectURIs() throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("xxx");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("ohmyauth");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn(" https://foo.example.com/oauth/callback,\n  http://localhost:8080/callback ");
+        CognitoConfig cognitoConfig = CognitoConfig.from(filterConfig);
+        assertThat(cognitoConfig.getRedirectURI(), is("https://foo.example.com/oauth/callback"));
+        assertThat(cognitoConfig.getRedirectURIs(), contains("https://foo.example.com/oauth/callback", "http://localhost:8080/callback"));
+    }
+
+    @Test
+    void from_invalidRedirectURI() {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("xxx");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("ohmyauth");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn("/oauth/callback");
+        assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
+    }
+
+    @Test
+    void from_paths() throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("xxx");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("ohmyauth");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn("https://foo.example.com/oauth/callback");
+        when(filterConfig.getInitParameter("excludePaths")).thenReturn("/static/*, *.css\n/favicon.ico");
+        CognitoConfig cognitoConfig = CognitoConfig.from(filterConfig);
+        assertThat(cognitoConfig.getIncludePaths(), is(empty()));
+        assertThat(cognitoConfig.getExcludePaths(), contains("/static/*", "*.css", "/favicon.ico"));
+
+        when(filterConfig.getInitParameter("includePaths")).thenReturn("secure/*");
+        assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
+    }
+
+    @Test
+    void from_sessionCookie() throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("xxx");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("ohmyauth");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn("https://foo.example.com/oauth/callback");
+        assertThat(CognitoConfig.from(filterConfig).getSessionStore(), is("http"));
+        assertThat(CognitoConfig.from(filterConfig).isBearerAuthentication(), is(false));
+        when(filterConfig.getInitParameter("authenticationMode")).thenReturn("bearer");
+        assertThat(CognitoConfig.from(filterConfig).isBearerAuthentication(), is(true));
+
+        when(filterConfig.getInitParameter("sessionStore")).thenReturn("cookie");
+        assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
+
+        when(filterConfig.getInitParameter("sessionCookieKeys")).thenReturn("AAAAAAAAAAAAAAAAAAAAAA==, AQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQEBAQE=");
+        CognitoConfig cognitoConfig = CognitoConfig.from(filterConfig);
+        assertThat(cognitoConfig.getSessionStore(), is("cookie"));
+        assertThat(cognitoConfig.getSessionCookieKeys().size(), is(2));
+
+        when(filterConfig.getInitParameter("sessionCookieKeys")).thenReturn("AAAA");
+        assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
+
+        when(filterConfig.getInitParameter("sessionStore")).thenReturn("file");
+        assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
+        when(filterConfig.getInitParameter("sessionStoreFile")).thenReturn("/tmp/myoauth-tokens");
+        when(filterConfig.getInitParameter("sessionStoreSize")).thenReturn("500");
+        cognitoConfig = CognitoConfig.from(filterConfig);
+        assertThat(cognitoConfig.getSessionStore(), is("file"));
+        assertThat(cognitoConfig.getSessionStoreSize(), is(500));
+        assertThat(cognitoConfig.getSessionStoreFile().toString(), is("/tmp/myoauth-tokens"));
+    }
+
+    @Test
+    void from_pkcePoolSize() throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("1234567890");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("xxx");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("ohmyauth");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn("https://foo.example.com/oauth/callback");
+        assertThat(CognitoConfig.from(filterConfig).getPkcePoolSize(), is(0));
+
+        when(filterConfig.getInitParameter("pkcePoolSize")).thenReturn("256");
+        assertThat(CognitoConfig.from(filterConfig).getPkcePoolSize(), is(256));
+
+        when(filterConfig.getInitParameter("pkcePoolSize")).thenReturn("-1");
+        assertThrows(ServletException.class, () -> CognitoConfig.from(filterConfig));
+    }
+}
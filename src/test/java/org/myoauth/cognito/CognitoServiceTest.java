@@ -17,18 +17,35 @@ package org.myoauth.cognito;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.myoauth.Either;
 
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 
+import java.io.IOException;
 import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class CognitoServiceTest {
 
+    static final String TOKEN_PATH = "/oauth2/token";
+
     @Test
     void authorization() throws ServletException {
         FilterConfig filterConfig = mock(FilterConfig.class);
@@ -50,4 +67,303 @@ class CognitoServiceTest {
         assertThat(actual, is(expected));
     }
 
+    @Test
+    void verifyReusesPublicKey() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JWK jwk = SampleTokens.jwk();
+        List<JWK> jwks = List.of(jwk);
+        String token = SampleTokens.accessToken();
+
+        PublicKey publicKey = jwk.getPublicKey();
+        for (int i = 0; i < 3; i++) {
+            assertThat(cognitoService.verify(token, jwks), is(true));
+        }
+        assertThat(jwk.getPublicKey(), is(sameInstance(publicKey)));
+    }
+
+    @Test
+    void verifyTamperedToken() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        String token = SampleTokens.accessToken();
+        int i = token.indexOf('.') + 1;
+        String tampered = token.substring(0, i) + (token.charAt(i) == 'e' ? 'f' : 'e') + token.substring(i + 1);
+        assertThat(cognitoService.verify(tampered, List.of(SampleTokens.jwk())), is(false));
+    }
+
+    @Test
+    void verifyTruncatedSignature() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String token = cognitoAccessToken("https://cognito-idp.eu-central-1.amazonaws.com/eu-central-1_test", "access", "34098ugf",
+                System.currentTimeMillis() / 1000 + 3600);
+        String truncated = token.substring(0, token.lastIndexOf('.') + 1) + "AAAA";
+        assertThat(cognitoService.verifyAccessToken(truncated, jwkSet), is(nullValue()));
+        String empty = token.substring(0, token.lastIndexOf('.') + 1);
+        assertThat(cognitoService.verify(empty, jwkSet), is(false));
+    }
+
+    @Test
+    void verifyUnknownKid() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk("another-kid")));
+        assertThat(cognitoService.verify(SampleTokens.accessToken(), jwkSet), is(false));
+    }
+
+    @Test
+    void verifyUsesVerifiedTokenCache() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String token = SampleTokens.accessToken();
+        VerifiedTokenCache cache = cognitoService.getVerifiedTokenCache();
+
+        assertThat(cognitoService.verify(token, jwkSet), is(true));
+        assertThat(cache.missCount(), is(1L));
+        assertThat(cognitoService.verify(token, jwkSet), is(true));
+        assertThat(cognitoService.verify(token, jwkSet), is(true));
+        assertThat(cache.hitCount(), is(2L));
+
+        /* the signing key left the key set */
+        assertThat(cognitoService.verify(token, JwkSet.of(List.of(SampleTokens.jwk("rotated")))), is(false));
+    }
+
+    @Test
+    void verifyWithoutVerifiedTokenCache() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config(Map.of("verifiedTokenCacheSize", "0")));
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String token = SampleTokens.accessToken();
+
+        assertThat(cognitoService.verify(token, jwkSet), is(true));
+        assertThat(cognitoService.verify(token, jwkSet), is(true));
+        assertThat(cognitoService.getVerifiedTokenCache().size(), is(0));
+        assertThat(cognitoService.getVerifiedTokenCache().hitCount(), is(0L));
+    }
+
+    static String cognitoAccessToken(String iss, String tokenUse, String clientId, long exp) {
+        return SampleTokens.token("{\"kid\":\"" + SampleTokens.KID + "\",\"alg\":\"RS256\"}",
+                "{\"sub\":\"aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee\",\"iss\":\"" + iss + "\",\"token_use\":\"" + tokenUse
+                        + "\",\"client_id\":\"" + clientId + "\",\"scope\":\"aws.cognito.signin.user.admin\",\"username\":\"alice\",\"exp\":" + exp + "}");
+    }
+
+    @Test
+    void verifyAccessTokenClaims() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String iss = "https://cognito-idp.eu-central-1.amazonaws.com/eu-central-1_test";
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+
+        VerifiedJwt verified = cognitoService.verifyAccessToken(cognitoAccessToken(iss, "access", "34098ugf", exp), jwkSet);
+        assertThat(verified.getSubject(), is("aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee"));
+        assertThat(verified.getUsername(), is("alice"));
+        assertThat(verified.getScope(), is("aws.cognito.signin.user.admin"));
+        assertThat(verified.getExp(), is(exp));
+
+        assertThat(cognitoService.verifyAccessToken(cognitoAccessToken(iss, "access", "34098ugf", exp - 7200), jwkSet), is(nullValue()));
+        assertThat(cognitoService.verifyAccessToken(cognitoAccessToken(iss + "x", "access", "34098ugf", exp), jwkSet), is(nullValue()));
+        assertThat(cognitoService.verifyAccessToken(cognitoAccessToken(iss, "id", "34098ugf", exp), jwkSet), is(nullValue()));
+        assertThat(cognitoService.verifyAccessToken(cognitoAccessToken(iss, "access", "another", exp), jwkSet), is(nullValue()));
+        assertThat(cognitoService.verifyAccessToken(SampleTokens.accessToken(), jwkSet), is(nullValue()));
+        assertThat(cognitoService.verifyAccessToken(cognitoAccessToken(iss, "access", "34098ugf", exp),
+                JwkSet.of(List.of(SampleTokens.jwk("another-kid")))), is(nullValue()));
+    }
+
+    @Test
+    void verifyIdTokenClaims() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String iss = "https://cognito-idp.eu-central-1.amazonaws.com/eu-central-1_test";
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        String header = "{\"kid\":\"" + SampleTokens.KID + "\",\"alg\":\"RS256\"}";
+
+        String idToken = SampleTokens.token(header, "{\"sub\":\"a\",\"iss\":\"" + iss + "\",\"token_use\":\"id\",\"aud\":\"34098ugf\",\"email\":\"alice@example.com\",\"exp\":" + exp + "}");
+        assertThat(cognitoService.verifyIdToken(idToken, jwkSet).getString("email"), is("alice@example.com"));
+        assertThat(cognitoService.verifyAccessToken(idToken, jwkSet), is(nullValue()));
+
+        String otherAudience = SampleTokens.token(header, "{\"sub\":\"a\",\"iss\":\"" + iss + "\",\"token_use\":\"id\",\"aud\":\"another\",\"exp\":" + exp + "}");
+        assertThat(cognitoService.verifyIdToken(otherAudience, jwkSet), is(nullValue()));
+    }
+
+    @Test
+    void verifiedTokenCacheKeepsClaims() throws ServletException {
+        CognitoService cognitoService = new CognitoService(config());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String token = cognitoAccessToken("https://cognito-idp.eu-central-1.amazonaws.com/eu-central-1_test", "access", "34098ugf",
+                System.currentTimeMillis() / 1000 + 3600);
+
+        VerifiedJwt first = cognitoService.verifyAccessToken(token, jwkSet);
+        VerifiedJwt second = cognitoService.verifyAccessToken(token, jwkSet);
+
+        /* the payload is decoded once */
+        assertThat(second, is(sameInstance(first)));
+        assertThat(cognitoService.getVerifiedTokenCache().hitCount(), is(1L));
+    }
+
+    @Test
+    void refreshToken() throws Exception {
+        try (StubServer server = new StubServer()) {
+            server.respond(TOKEN_PATH, 200, tokenJson(3600));
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            Either<CognitoError, UserPoolToken> either = cognitoService.refreshToken("refresh");
+            assertThat(either.isRight(), is(true));
+            assertThat(either.getRight().getAccessToken(), is("access"));
+            assertThat(either.getRight().getExpiresIn(), is(3600));
+        }
+    }
+
+    @Test
+    void authorizationCodeExchangeAsyncError() throws Exception {
+        try (StubServer server = new StubServer()) {
+            server.respond(TOKEN_PATH, 400, "{\"error\":\"invalid_grant\"}");
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            Either<CognitoError, UserPoolToken> either = cognitoService.authorizationCodeExchangeAsync("code", "verifier").get(10, TimeUnit.SECONDS);
+            assertThat(either.getLeft(), is(CognitoError.INVALID_GRANT));
+        }
+    }
+
+    @Test
+    void unexpectedStatusCode() throws Exception {
+        try (StubServer server = new StubServer()) {
+            server.respond(TOKEN_PATH, 502, "<html>Bad Gateway</html>");
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            assertThrows(IOException.class, () -> cognitoService.refreshToken("refresh"));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> cognitoService.refreshTokenAsync("refresh").get(10, TimeUnit.SECONDS));
+            assertThat(e.getCause(), is(instanceOf(IOException.class)));
+        }
+    }
+
+    @Test
+    void backchannelTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (StubServer server = new StubServer()) {
+            blockingTokenEndpoint(server, release);
+            CognitoService cognitoService = new CognitoService(config(Map.of("backchannelTimeout", "1")), server.base(), server.uri("/jwks.json"));
+
+            assertThrows(HttpTimeoutException.class, () -> cognitoService.refreshToken("refresh"));
+            release.countDown();
+        }
+    }
+
+    @Test
+    void interruptCancelsRequest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (StubServer server = new StubServer()) {
+            blockingTokenEndpoint(server, release);
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            CompletableFuture<Either<CognitoError, UserPoolToken>> future = cognitoService.refreshTokenAsync("refresh");
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(IOException.class, () -> CognitoService.await(future));
+                assertThat(Thread.interrupted(), is(true));
+                assertThat(future.isCancelled(), is(true));
+            } finally {
+                release.countDown();
+            }
+        }
+    }
+
+    @Test
+    void concurrentRefreshGrantsAreCoalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (StubServer server = new StubServer()) {
+            blockingTokenEndpoint(server, release);
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch joined = new CountDownLatch(threads);
+            List<Future<Either<CognitoError, UserPoolToken>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    CompletableFuture<Either<CognitoError, UserPoolToken>> future = cognitoService.refreshTokenAsync("refresh");
+                    joined.countDown();
+                    return CognitoService.await(future);
+                }));
+            }
+            start.countDown();
+            assertThat(joined.await(10, TimeUnit.SECONDS), is(true));
+            release.countDown();
+
+            for (Future<Either<CognitoError, UserPoolToken>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS).getRight().getAccessToken(), is("access"));
+            }
+            assertThat(server.count(TOKEN_PATH), is(1));
+
+            /* a finished grant is not reused */
+            cognitoService.refreshToken("refresh");
+            assertThat(server.count(TOKEN_PATH), is(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void refreshGrantsWithDifferentTokensAreNotCoalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (StubServer server = new StubServer()) {
+            blockingTokenEndpoint(server, release);
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            CompletableFuture<Either<CognitoError, UserPoolToken>> first = cognitoService.refreshTokenAsync("first");
+            CompletableFuture<Either<CognitoError, UserPoolToken>> second = cognitoService.refreshTokenAsync("second");
+            release.countDown();
+            CognitoService.await(first);
+            CognitoService.await(second);
+            assertThat(server.count(TOKEN_PATH), is(2));
+        }
+    }
+
+    @Test
+    void cancelledCallerDoesNotCancelSharedRefreshGrant() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (StubServer server = new StubServer()) {
+            blockingTokenEndpoint(server, release);
+            CognitoService cognitoService = new CognitoService(config(), server.base(), server.uri("/jwks.json"));
+
+            CompletableFuture<Either<CognitoError, UserPoolToken>> first = cognitoService.refreshTokenAsync("refresh");
+            CompletableFuture<Either<CognitoError, UserPoolToken>> second = cognitoService.refreshTokenAsync("refresh");
+            first.cancel(true);
+            release.countDown();
+
+            assertThat(CognitoService.await(second).getRight().getAccessToken(), is("access"));
+            assertThat(server.count(TOKEN_PATH), is(1));
+        }
+    }
+
+    /* Answers the token endpoint once the latch is released */
+    private static void blockingTokenEndpoint(StubServer server, CountDownLatch release) {
+        server.respond(TOKEN_PATH, exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StubServer.send(exchange, 200, tokenJson(3600));
+        });
+    }
+
+    static String tokenJson(int expiresIn) {
+        return "{\"access_token\":\"access\",\"refresh_token\":\"refresh\",\"id_token\":\"id\",\"token_type\":\"Bearer\",\"expires_in\":" + expiresIn + "}";
+    }
+
+    static CognitoConfig config() throws ServletException {
+        return config(Map.of());
+    }
+
+    static CognitoConfig config(Map<String, String> optional) throws ServletException {
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getInitParameter("userPoolId")).thenReturn("eu-central-1_test");
+        when(filterConfig.getInitParameter("clientId")).thenReturn("34098ugf");
+        when(filterConfig.getInitParameter("clientSecret")).thenReturn("xxx");
+        when(filterConfig.getInitParameter("prefixDomainName")).thenReturn("hello");
+        when(filterConfig.getInitParameter("region")).thenReturn("eu-central-1");
+        when(filterConfig.getInitParameter("redirectURI")).thenReturn("https://foo.example.com/oauth/callback");
+        optional.forEach((name, value) -> when(filterConfig.getInitParameter(name)).thenReturn(value));
+        return CognitoConfig.from(filterConfig);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JWKTest {
+
+    @Test
+    void publicKeyIsDecodedOnce() {
+        JWK jwk = SampleTokens.jwk();
+        PublicKey publicKey = jwk.getPublicKey();
+        assertThat(publicKey, is(instanceOf(RSAPublicKey.class)));
+        assertThat(jwk.getPublicKey(), is(sameInstance(publicKey)));
+    }
+
+    @Test
+    void invalidPublicKey() {
+        JWK jwk = new JWK("kid", "RS256", "RSA", "AQAB", "", "sig");
+        assertThrows(IllegalArgumentException.class, jwk::getPublicKey);
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class JsonScannerTest {
+
+    @Test
+    void getString() {
+        byte[] json = bytes("{\"kid\":\"abc=\",\"alg\":\"RS256\"}");
+        assertThat(JsonScanner.getString(json, "kid"), is("abc="));
+        assertThat(JsonScanner.getString(json, "alg"), is("RS256"));
+        assertThat(JsonScanner.getString(json, "typ"), is(nullValue()));
+    }
+
+    @Test
+    void getStringSkipsNestedValues() {
+        byte[] json = bytes(" { \"a\" : [1, {\"kid\": \"inner\"}], \"b\": {\"kid\": \"x\"}, \"c\": true, \"kid\" : \"outer\" } ");
+        assertThat(JsonScanner.getString(json, "kid"), is("outer"));
+    }
+
+    @Test
+    void getStringWithEscapes() {
+        byte[] json = bytes("{\"k\\u0069d\":\"a\\\"b\\\\c\\/d\\u00e9\"}");
+        assertThat(JsonScanner.getString(json, "kid"), is("a\"b\\c/dé"));
+    }
+
+    @Test
+    void lastMemberWins() {
+        byte[] json = bytes("{\"kid\":\"first\",\"kid\":\"last\"}");
+        assertThat(JsonScanner.getString(json, "kid"), is("last"));
+    }
+
+    @Test
+    void notAString() {
+        byte[] json = bytes("{\"kid\":42}");
+        assertThat(JsonScanner.getString(json, "kid"), is(nullValue()));
+    }
+
+    @Test
+    void findSeveralMembersInOnePass() {
+        byte[] json = bytes("{\"sub\":\"alice\",\"nested\":{\"exp\":1},\"exp\":1700000000,\"sub\":\"bob\"}");
+        int[] at = JsonScanner.find(json, "sub", "exp", "iss");
+        assertThat(JsonScanner.stringAt(json, at[0]), is("bob"));
+        assertThat(JsonScanner.longAt(json, at[1], 0), is(1700000000L));
+        assertThat(at[2], is(-1));
+        assertThat(JsonScanner.stringAt(json, at[2]), is(nullValue()));
+        assertThat(JsonScanner.stringAt(json, at[1]), is(nullValue()));
+    }
+
+    @Test
+    void findInMalformedObject() {
+        assertThat(JsonScanner.find(bytes("{\"sub\":\"alice\""), "sub"), is(nullValue()));
+        assertThat(JsonScanner.find(bytes("[]"), "sub"), is(nullValue()));
+    }
+
+    @Test
+    void getLong() {
+        byte[] json = bytes("{\"exp\":1625097600,\"iat\":-5,\"nbf\":1.5,\"jti\":\"1\"}");
+        assertThat(JsonScanner.getLong(json, "exp", 0), is(1625097600L));
+        assertThat(JsonScanner.getLong(json, "iat", 0), is(-5L));
+        assertThat(JsonScanner.getLong(json, "nbf", 0), is(0L));
+        assertThat(JsonScanner.getLong(json, "jti", 0), is(0L));
+        assertThat(JsonScanner.getLong(json, "auth_time", -1), is(-1L));
+    }
+
+    @Test
+    void malformed() {
+        assertThat(JsonScanner.getString(bytes(""), "kid"), is(nullValue()));
+        assertThat(JsonScanner.getString(bytes("[\"kid\"]"), "kid"), is(nullValue()));
+        assertThat(JsonScanner.getString(bytes("{\"kid\":\"abc\""), "kid"), is(nullValue()));
+        assertThat(JsonScanner.getString(bytes("{\"kid\" \"abc\"}"), "kid"), is(nullValue()));
+        assertThat(JsonScanner.getString(bytes("{\"kid\":\"abc\",}"), "kid"), is(nullValue()));
+        assertThat(JsonScanner.getLong(bytes("{\"exp\":}"), "exp", 7), is(7L));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(UTF_8);
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwkSetManagerTest {
+
+    private static final String JWKS_PATH = "/eu-central-1_test/.well-known/jwks.json";
+
+    private StubServer server;
+    private CognitoService cognito;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubServer();
+        cognito = new CognitoService(CognitoServiceTest.config(), server.base(), server.uri(JWKS_PATH));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void loadsJwksJson() throws Exception {
+        server.respond(JWKS_PATH, 200, resource("jwks.json"));
+        JwkSet jwks = cognito.jwkSet();
+        assertThat(jwks.size(), is(2));
+        assertThat(jwks.contains("4JOcLCZxaQq66bdmZHZnRj7ScfZg8fJJzab8In22chE="), is(true));
+    }
+
+    @Test
+    void failedLoad() {
+        server.respond(JWKS_PATH, 500, "<html></html>");
+        assertThrows(IOException.class, () -> cognito.jwkSet());
+    }
+
+    @Test
+    void unknownKidTriggersOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        String body = StubServer.jwksJson(SampleTokens.jwk());
+        server.respond(JWKS_PATH, exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StubServer.send(exchange, 200, body);
+        });
+
+        try (JwkSetManager manager = new JwkSetManager(cognito, JwkSet.empty(), Duration.ofHours(1), Duration.ofMinutes(1))) {
+            ExecutorService executor = Executors.newFixedThreadPool(16);
+            try {
+                List<Future<JWK>> results = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    results.add(executor.submit(() -> manager.find(SampleTokens.KID)));
+                }
+                /* give every thread the chance to hit the unknown kid before the fetch completes */
+                Thread.sleep(200);
+                release.countDown();
+                for (Future<JWK> result : results) {
+                    assertThat(result.get(10, TimeUnit.SECONDS), is(notNullValue()));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertThat(server.count(JWKS_PATH), is(1));
+            assertThat(manager.get().contains(SampleTokens.KID), is(true));
+        }
+    }
+
+    @Test
+    void minimumRefreshInterval() {
+        server.respond(JWKS_PATH, 200, StubServer.jwksJson(SampleTokens.jwk()));
+        try (JwkSetManager manager = new JwkSetManager(cognito, JwkSet.empty(), Duration.ofHours(1), Duration.ofMinutes(1))) {
+            assertThat(manager.find("made-up-1"), is(nullValue()));
+            assertThat(manager.find("made-up-2"), is(nullValue()));
+            assertThat(manager.find("made-up-3"), is(nullValue()));
+            assertThat(server.count(JWKS_PATH), is(1));
+            assertThat(manager.find(SampleTokens.KID), is(notNullValue()));
+        }
+    }
+
+    @Test
+    void failedRefreshKeepsKeys() {
+        server.respond(JWKS_PATH, 503, "{}");
+        JwkSet initial = JwkSet.of(List.of(SampleTokens.jwk()));
+        try (JwkSetManager manager = new JwkSetManager(cognito, initial, Duration.ofHours(1), Duration.ZERO)) {
+            assertThat(manager.find("unknown"), is(nullValue()));
+            assertThat(manager.get(), is(sameInstance(initial)));
+        }
+    }
+
+    @Test
+    void reloadKeepsUnchangedKeys() throws Exception {
+        server.respond(JWKS_PATH, 200, StubServer.jwksJson(SampleTokens.jwk(), SampleTokens.jwk("new")));
+        JWK known = SampleTokens.jwk();
+        JwkSet initial = JwkSet.of(List.of(known, SampleTokens.jwk("old")));
+        try (JwkSetManager manager = new JwkSetManager(cognito, initial, Duration.ofHours(1), Duration.ZERO)) {
+            JwkSet reloaded = manager.refresh().get(10, TimeUnit.SECONDS);
+            assertThat(reloaded.get(SampleTokens.KID), is(sameInstance(known)));
+            assertThat(reloaded.contains("new"), is(true));
+            assertThat(reloaded.contains("old"), is(false));
+
+            assertThat(manager.refresh().get(10, TimeUnit.SECONDS), is(sameInstance(reloaded)));
+        }
+    }
+
+    @Test
+    void emptyReloadKeepsKeys() throws Exception {
+        server.respond(JWKS_PATH, 200, "{\"keys\":[]}");
+        JwkSet initial = JwkSet.of(List.of(SampleTokens.jwk()));
+        try (JwkSetManager manager = new JwkSetManager(cognito, initial, Duration.ofHours(1), Duration.ZERO)) {
+            assertThat(manager.refresh().get(10, TimeUnit.SECONDS), is(sameInstance(initial)));
+        }
+    }
+
+    @Test
+    void scheduledRefresh() throws Exception {
+        server.respond(JWKS_PATH, 200, StubServer.jwksJson(SampleTokens.jwk()));
+        try (JwkSetManager manager = new JwkSetManager(cognito, JwkSet.empty(), Duration.ofMillis(50), Duration.ZERO)) {
+            manager.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!manager.get().contains(SampleTokens.KID) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(manager.get().contains(SampleTokens.KID), is(true));
+        }
+    }
+
+    @Test
+    void verifyFetchesRotatedKey() {
+        server.respond(JWKS_PATH, 200, StubServer.jwksJson(SampleTokens.jwk()));
+        JwkSet stale = JwkSet.of(List.of(SampleTokens.jwk("old")));
+        try (JwkSetManager manager = new JwkSetManager(cognito, stale, Duration.ofHours(1), Duration.ofMinutes(1))) {
+            assertThat(cognito.verify(SampleTokens.accessToken(), manager), is(true));
+            assertThat(server.count(JWKS_PATH), is(1));
+        }
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream inputStream = JwkSetManagerTest.class.getClassLoader().getResourceAsStream(name)) {
+            return new String(inputStream.readAllBytes(), UTF_8);
+        }
+    }
+
+}
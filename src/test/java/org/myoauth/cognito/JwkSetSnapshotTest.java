@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwkSetSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndRead() throws IOException {
+        Path path = directory.resolve("jwks.json");
+        JwkSet jwks = JwkSetTest.read("jwks.json");
+        JwkSetSnapshot.write(path, jwks);
+
+        JwkSet read = JwkSetSnapshot.read(path);
+        assertThat(read.size(), is(2));
+        for (JWK jwk : jwks) {
+            assertThat(read.get(jwk.getKid()).getN(), is(jwk.getN()));
+            assertThat(read.get(jwk.getKid()).getE(), is(jwk.getE()));
+        }
+    }
+
+    @Test
+    void writeReplacesAndLeavesNoTemporaryFiles() throws IOException {
+        Path path = directory.resolve("snapshots").resolve("jwks.json");
+        JwkSetSnapshot.write(path, JwkSetTest.read("jwks.json"));
+        JwkSetSnapshot.write(path, JwkSet.of(List.of(SampleTokens.jwk())));
+
+        assertThat(JwkSetSnapshot.read(path).contains(SampleTokens.KID), is(true));
+        try (var files = Files.list(path.getParent())) {
+            assertThat(files.count(), is(1L));
+        }
+    }
+
+    @Test
+    void readMalformed() throws IOException {
+        Path path = directory.resolve("jwks.json");
+        Files.writeString(path, "{\"keys\":");
+        assertThrows(IOException.class, () -> JwkSetSnapshot.read(path));
+    }
+
+    @Test
+    void managerWritesSnapshotAfterReload() throws Exception {
+        Path path = directory.resolve("jwks.json");
+        try (StubServer server = new StubServer()) {
+            server.respond("/jwks.json", 200, StubServer.jwksJson(SampleTokens.jwk()));
+            CognitoService cognito = new CognitoService(CognitoServiceTest.config(), server.base(), server.uri("/jwks.json"));
+            try (JwkSetManager manager = new JwkSetManager(cognito, JwkSet.empty(), Duration.ofHours(1), Duration.ZERO, path)) {
+                manager.refresh().get();
+            }
+        }
+        assertThat(JwkSetSnapshot.read(path).contains(SampleTokens.KID), is(true));
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import jakarta.json.Json;
+import jakarta.json.JsonReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class JwkSetTest {
+
+    @Test
+    void fromJson() throws IOException {
+        JwkSet jwkSet = read("jwks.json");
+        assertThat(jwkSet.size(), is(2));
+        assertThat(jwkSet.get("4JOcLCZxaQq66bdmZHZnRj7ScfZg8fJJzab8In22chE=").getAlg(), is("RS256"));
+        assertThat(jwkSet.get("uHg1OwpS86xPJNgjwQZ0jad6tqtsWFIsJH2Od32yUPk=").getUse(), is("sig"));
+        assertThat(jwkSet.keys().get(0).getKid(), is("4JOcLCZxaQq66bdmZHZnRj7ScfZg8fJJzab8In22chE="));
+    }
+
+    @Test
+    void unknownKid() {
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        assertThat(jwkSet.get("unknown"), is(nullValue()));
+        assertThat(jwkSet.get(null), is(nullValue()));
+        assertThat(jwkSet.contains(SampleTokens.KID), is(true));
+    }
+
+    @Test
+    void duplicateKid() {
+        JWK first = SampleTokens.jwk();
+        JwkSet jwkSet = JwkSet.of(List.of(first, SampleTokens.jwk(), SampleTokens.jwk("other")));
+        assertThat(jwkSet.size(), is(2));
+        assertThat(jwkSet.get(SampleTokens.KID), is(sameInstance(first)));
+        assertThat(jwkSet.keys().get(1).getKid(), is("other"));
+    }
+
+    @Test
+    void empty() {
+        assertThat(JwkSet.empty().isEmpty(), is(true));
+        assertThat(JwkSet.empty().get(SampleTokens.KID), is(nullValue()));
+    }
+
+    static JwkSet read(String resource) throws IOException {
+        try (InputStream inputStream = JwkSetTest.class.getClassLoader().getResourceAsStream(resource);
+             JsonReader jsonReader = Json.createReader(inputStream)) {
+            return JwkSet.from(jsonReader.readObject());
+        }
+    }
+
+}
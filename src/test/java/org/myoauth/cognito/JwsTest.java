@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class JwsTest {
+
+    @Test
+    void parse() {
+        String token = SampleTokens.accessToken();
+        Jws jws = Jws.parse(token);
+        assertThat(jws.getKid(), is(SampleTokens.KID));
+        assertThat(jws.getAlg(), is("RS256"));
+        assertThat(new String(jws.bytes(), 0, jws.signingInputLength(), US_ASCII), is(token.substring(0, token.lastIndexOf('.'))));
+        assertThat(new String(jws.payload(), US_ASCII), containsString("\"token_use\":\"access\""));
+        assertThat(jws.signature().length, is(256));
+    }
+
+    @Test
+    void parseMalformed() {
+        assertThat(Jws.parse(""), is(nullValue()));
+        assertThat(Jws.parse("abc"), is(nullValue()));
+        assertThat(Jws.parse("abc.def"), is(nullValue()));
+        assertThat(Jws.parse(".def.ghi"), is(nullValue()));
+        assertThat(Jws.parse("a.b.c.d"), is(nullValue()));
+        assertThat(Jws.parse("%%%.def.ghi"), is(nullValue()));
+    }
+
+    @Test
+    void parseAllocatesLittle() {
+        com.sun.management.ThreadMXBean threadMXBean = threadMXBean();
+        String token = SampleTokens.accessToken();
+        long threadId = Thread.currentThread().getId();
+
+        /* warm up so that the JIT can remove short-lived objects */
+        for (int i = 0; i < 20_000; i++) {
+            Jws.parse(token);
+        }
+
+        int iterations = 10_000;
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            Jws.parse(token);
+        }
+        long perParse = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / iterations;
+
+        /* one copy of the token, the decoded header and two short strings */
+        assertThat(perParse, is(lessThan(token.length() + 512L)));
+    }
+
+    @Test
+    void verifyAllocatesLessThanTheSignatureMath() {
+        com.sun.management.ThreadMXBean threadMXBean = threadMXBean();
+        /* without the verified token cache every call checks the signature */
+        CognitoService cognitoService = new CognitoService(configOrFail());
+        JwkSet jwkSet = JwkSet.of(List.of(SampleTokens.jwk()));
+        String token = SampleTokens.accessToken();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < 2_000; i++) {
+            cognitoService.verify(token, jwkSet);
+        }
+
+        int iterations = 1_000;
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            cognitoService.verify(token, jwkSet);
+        }
+        long perVerify = (threadMXBean.getThreadAllocatedBytes(threadId) - before) / iterations;
+
+        /* RSA with a 2048 bit modulus needs a few KB of BigInteger arithmetic, the rest must stay small */
+        assertThat(perVerify, is(lessThan(16 * 1024L)));
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        return threadMXBean;
+    }
+
+    private static CognitoConfig configOrFail() {
+        try {
+            return CognitoServiceTest.config(Map.of("verifiedTokenCacheSize", "0"));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Creates signed JSON Web Tokens for tests. The key pair is generated once per test run.
+ */
+public final class SampleTokens {
+
+    public static final String KID = "test-kid";
+
+    private static final KeyPair KEY_PAIR = generate();
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private SampleTokens() { }
+
+    /**
+     * Returns the public key of the test key pair as JWK.
+     *
+     * @param kid the key id
+     * @return a web key
+     */
+    public static JWK jwk(String kid) {
+        RSAPublicKey publicKey = (RSAPublicKey) KEY_PAIR.getPublic();
+        return new JWK(kid, "RS256", "RSA",
+                ENCODER.encodeToString(unsigned(publicKey.getPublicExponent())),
+                ENCODER.encodeToString(unsigned(publicKey.getModulus())),
+                "sig");
+    }
+
+    public static JWK jwk() {
+        return jwk(KID);
+    }
+
+    /**
+     * Returns a signed JWT with the given header and payload JSON.
+     */
+    public static String token(String header, String payload) {
+        String signingInput = ENCODER.encodeToString(header.getBytes(UTF_8))
+                + "." + ENCODER.encodeToString(payload.getBytes(UTF_8));
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(KEY_PAIR.getPrivate());
+            signature.update(signingInput.getBytes(US_ASCII));
+            return signingInput + "." + ENCODER.encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a signed access token that expires in one hour.
+     */
+    public static String accessToken() {
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        return token("{\"kid\":\"" + KID + "\",\"alg\":\"RS256\"}",
+                "{\"sub\":\"aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee\",\"token_use\":\"access\",\"exp\":" + exp + "}");
+    }
+
+    /**
+     * Returns the claims of a token as if it had been verified.
+     */
+    public static VerifiedJwt verified(String payload) {
+        return VerifiedJwt.of(payload.getBytes(UTF_8));
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0 && bytes.length > 1) {
+            byte[] stripped = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, stripped, 0, stripped.length);
+            return stripped;
+        }
+        return bytes;
+    }
+
+    private static KeyPair generate() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class SignatureVerifierTest {
+
+    private final String token = SampleTokens.accessToken();
+    private final byte[] signingInput = token.substring(0, token.lastIndexOf('.')).getBytes(US_ASCII);
+    private final byte[] signature = Base64.getUrlDecoder().decode(token.substring(token.lastIndexOf('.') + 1));
+
+    @Test
+    void verify() throws GeneralSecurityException {
+        SignatureVerifier verifier = new SignatureVerifier(SampleTokens.jwk().getPublicKey());
+        assertThat(verifier.verify(signingInput, 0, signingInput.length, signature), is(true));
+        assertThat(verifier.verify(signingInput, 0, signingInput.length - 1, signature), is(false));
+    }
+
+    @Test
+    void sequentialCallsReuseOneInstance() throws GeneralSecurityException {
+        SignatureVerifier verifier = new SignatureVerifier(SampleTokens.jwk().getPublicKey());
+        for (int i = 0; i < 10; i++) {
+            verifier.verify(signingInput, 0, signingInput.length, signature);
+        }
+        assertThat(verifier.idle(), is(1));
+    }
+
+    @Test
+    void concurrentCalls() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(SampleTokens.jwk().getPublicKey());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(() -> verifier.verify(signingInput, 0, signingInput.length, signature)));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(verifier.idle(), is(both(greaterThan(0)).and(lessThanOrEqualTo(8))));
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A local HTTP server that stands in for Amazon Cognito in tests and counts the requests per path.
+ */
+public final class StubServer implements AutoCloseable {
+
+    /**
+     * Produces the response of a stubbed path.
+     */
+    public interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    public StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Answers requests to {@code path} with a fixed JSON body.
+     */
+    public StubServer respond(String path, int status, String body) {
+        return respond(path, exchange -> send(exchange, status, body));
+    }
+
+    public StubServer respond(String path, Handler handler) {
+        AtomicInteger count = counts.computeIfAbsent(path, p -> new AtomicInteger());
+        server.createContext(path, exchange -> {
+            count.incrementAndGet();
+            try {
+                exchange.getRequestBody().readAllBytes();
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    public int count(String path) {
+        AtomicInteger count = counts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    public URI base() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    public URI uri(String path) {
+        return URI.create(base() + path);
+    }
+
+    public static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Returns the JSON representation of a key set as served by Amazon Cognito.
+     */
+    public static String jwksJson(JWK... keys) {
+        StringBuilder sb = new StringBuilder("{\"keys\":[");
+        for (int i = 0; i < keys.length; i++) {
+            JWK jwk = keys[i];
+            sb.append(i == 0 ? "" : ",")
+                    .append("{\"alg\":\"").append(jwk.getAlg())
+                    .append("\",\"e\":\"").append(jwk.getE())
+                    .append("\",\"kid\":\"").append(jwk.getKid())
+                    .append("\",\"kty\":\"").append(jwk.getKty())
+                    .append("\",\"n\":\"").append(jwk.getN())
+                    .append("\",\"use\":\"").append(jwk.getUse())
+                    .append("\"}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class VerifiedJwtTest {
+
+    private static final String PAYLOAD = "{\"sub\":\"aaaa\",\"iss\":\"https://cognito-idp.eu-central-1.amazonaws.com/pool\","
+            + "\"token_use\":\"id\",\"aud\":\"client\",\"exp\":1700000000,\"auth_time\":1699990000,"
+            + "\"email\":\"alice@example.com\",\"cognito:groups\":[\"admin\"],\"email_verified\":true}";
+
+    @Test
+    void requiredClaims() {
+        VerifiedJwt verified = VerifiedJwt.of(PAYLOAD.getBytes(UTF_8));
+
+        assertThat(verified.getSubject(), is("aaaa"));
+        assertThat(verified.getIssuer(), is("https://cognito-idp.eu-central-1.amazonaws.com/pool"));
+        assertThat(verified.getTokenUse(), is("id"));
+        assertThat(verified.getAudience(), is("client"));
+        assertThat(verified.getClientId(), is(nullValue()));
+        assertThat(verified.getExp(), is(1700000000L));
+    }
+
+    @Test
+    void otherClaimsOnDemand() {
+        VerifiedJwt verified = VerifiedJwt.of(PAYLOAD.getBytes(UTF_8));
+
+        assertThat(verified.getString("email"), is("alice@example.com"));
+        assertThat(verified.getString("email"), is(sameInstance(verified.getString("email"))));
+        assertThat(verified.getLong("auth_time", 0), is(1699990000L));
+        assertThat(verified.getString("auth_time"), is(nullValue()));
+        assertThat(verified.getString("cognito:groups"), is(nullValue()));
+        assertThat(verified.getLong("email_verified", -1), is(-1L));
+        assertThat(verified.getUsername(), is(nullValue()));
+    }
+
+    @Test
+    void malformedPayload() {
+        assertThat(VerifiedJwt.of("not json".getBytes(UTF_8)), is(nullValue()));
+        assertThat(VerifiedJwt.of("{\"sub\":".getBytes(UTF_8)), is(nullValue()));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class VerifiedTokenCacheTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2021-07-01T00:00:00Z"));
+    private final JwkSet jwks = JwkSet.of(List.of(SampleTokens.jwk()));
+    private final long now = clock.instant().getEpochSecond();
+
+    static VerifiedJwt verified(long exp) {
+        return SampleTokens.verified("{\"exp\":" + exp + "}");
+    }
+
+    @Test
+    void hitAndMiss() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, clock);
+        assertThat(cache.get("a.b.c", jwks), is(nullValue()));
+        cache.put("a.b.c", SampleTokens.KID, verified(now + 60));
+        assertThat(cache.get("a.b.c", jwks), is(notNullValue()));
+        assertThat(cache.get("a.b.d", jwks), is(nullValue()));
+        assertThat(cache.hitCount(), is(1L));
+        assertThat(cache.missCount(), is(2L));
+    }
+
+    @Test
+    void evictedAtExpiration() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, clock);
+        cache.put("a.b.c", SampleTokens.KID, verified(now + 60));
+        clock.advance(59);
+        assertThat(cache.get("a.b.c", jwks), is(notNullValue()));
+        clock.advance(1);
+        assertThat(cache.get("a.b.c", jwks), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void expiredTokensAreNotAdded() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, clock);
+        cache.put("a.b.c", SampleTokens.KID, verified(now));
+        cache.put("a.b.d", SampleTokens.KID, verified(0));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void unknownKid() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, clock);
+        cache.put("a.b.c", "rotated", verified(now + 60));
+        assertThat(cache.get("a.b.c", jwks), is(nullValue()));
+    }
+
+    @Test
+    void bounded() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, clock);
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("a.b." + i, SampleTokens.KID, verified(now + 60));
+        }
+        assertThat(cache.size(), is(lessThanOrEqualTo(100)));
+        assertThat(cache.get("a.b.999", jwks), is(notNullValue()));
+    }
+
+    @Test
+    void evictsInBatches() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(100, clock);
+        for (int i = 0; i < 100; i++) {
+            cache.put("a.b." + i, SampleTokens.KID, verified(now + 60));
+        }
+        assertThat(cache.size(), is(100));
+        cache.put("a.b.100", SampleTokens.KID, verified(now + 60));
+        /* a tenth freed at once, the next insertions do not scan */
+        assertThat(cache.size(), is(91));
+        for (int i = 101; i < 110; i++) {
+            cache.put("a.b." + i, SampleTokens.KID, verified(now + 60));
+        }
+        assertThat(cache.size(), is(100));
+    }
+
+    @Test
+    void expiredEntriesAreEvictedFirst() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2, clock);
+        cache.put("short", SampleTokens.KID, verified(now + 10));
+        cache.put("long", SampleTokens.KID, verified(now + 60));
+        clock.advance(30);
+        cache.put("new", SampleTokens.KID, verified(now + 60));
+        assertThat(cache.get("long", jwks), is(notNullValue()));
+        assertThat(cache.get("new", jwks), is(notNullValue()));
+    }
+
+    @Test
+    void disabled() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(0, clock);
+        cache.put("a.b.c", SampleTokens.KID, verified(now + 60));
+        assertThat(cache.get("a.b.c", jwks), is(nullValue()));
+        assertThat(cache.missCount(), is(0L));
+    }
+
+    static final class MutableClock extends Clock {
+
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(long seconds) {
+            instant = instant.plusSeconds(seconds);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+}
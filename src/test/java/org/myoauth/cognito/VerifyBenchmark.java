@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021 Björn Raupach
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES WITH
+ * REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY SPECIAL, DIRECT,
+ * INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES WHATSOEVER RESULTING FROM
+ * LOSS OF USE, DATA OR PROFITS, WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR
+ * OTHER TORTIOUS ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR
+ * PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.myoauth.cognito;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Throughput of signature verification with a {@code Signature} per call versus pooled instances.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.myoauth.cognito.VerifyBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class VerifyBenchmark {
+
+    private JWK jwk;
+    private JwkSet jwkSet;
+    private String token;
+    private byte[] signingInput;
+    private byte[] signature;
+    private CognitoService cognitoService;
+
+    @Setup
+    public void setup() throws Exception {
+        jwk = SampleTokens.jwk();
+        jwkSet = JwkSet.of(List.of(jwk));
+        token = SampleTokens.accessToken();
+        signingInput = token.substring(0, token.lastIndexOf('.')).getBytes(US_ASCII);
+        signature = Base64.getUrlDecoder().decode(token.substring(token.lastIndexOf('.') + 1));
+        /* without the verified token cache, verify() would measure cache hits */
+        cognitoService = new CognitoService(CognitoServiceTest.config(Map.of("verifiedTokenCacheSize", "0")));
+    }
+
+    @Benchmark
+    public boolean signaturePerCall() throws GeneralSecurityException {
+        Signature sig = Signature.getInstance(SignatureVerifier.ALGORITHM);
+        sig.initVerify(jwk.getPublicKey());
+        sig.update(signingInput);
+        return sig.verify(signature);
+    }
+
+    @Benchmark
+    public boolean pooledSignature() throws GeneralSecurityException {
+        return jwk.verifier().verify(signingInput, 0, signingInput.length, signature);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return cognitoService.verify(token, jwkSet);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(VerifyBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}